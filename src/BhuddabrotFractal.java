@@ -1,20 +1,73 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAccumulator;
 
 public class BhuddabrotFractal extends Fractal {
 
+    /**
+     * The chance that a Metropolis-Hastings proposal is a new point drawn from the annulus, rather
+     * than a mutation of the current point.
+     */
+    private static final double UNIFORM_PROPOSAL_PROBABILITY = 0.2;
+
+    /**
+     * The shortest and longest distances a mutation moves a point, as fractions of the height of
+     * the view. Distances in between are chosen log-uniformly.
+     */
+    private static final double MIN_MUTATION = 1.0e-4, MAX_MUTATION = 0.1;
+
+    /**
+     * The number of contributing points found before importance sampling, to start the chains from.
+     */
+    private static final int NUM_SEEDS = 256;
+
+    /**
+     * The number of starting points tested for escape at a time, before the orbits of those that
+     * escape are traced.
+     */
+    private static final int POINT_BLOCK = 4096;
+
+    /**
+     * The most shades the image is coloured with outside nebula mode. Pixel counts are scaled
+     * down to fit if there are more.
+     */
+    private static final int MAX_COLOUR_STEPS = 1 << 16;
+
     private int numRandomPoints;
 
-    protected Complex[] randomStartingPoints;
+    /**
+     * The real and imaginary parts of the starting points. A point whose real part is NaN has been
+     * discarded, and is replaced by setupFractal.
+     */
+    protected double[] pointReals, pointImags;
 
-    protected int[][] channels;
+    /**
+     * The histograms the render threads add to.
+     */
+    StripedHistogram histogram;
+
+    private HistogramPrecision histogramPrecision = HistogramPrecision.INT;
+
+    boolean exposureEnabled;
 
-    private int[][][] newChannels;
+    /**
+     * The most batches of samples added to the exposure by one render.
+     */
+    private int exposureBatches = 20;
+
+    /**
+     * The histograms of the exposure so far, the view and settings it was made with, the number
+     * of samples in it, and the weight scale of each channel of its importance sampling, if any.
+     */
+    private StripedHistogram exposure;
+    private List<Object> exposureKey;
+    private long exposureSamples;
+    private double[] exposureScales;
 
     boolean nebulaModeEnabled;
 
@@ -22,6 +75,17 @@ public class BhuddabrotFractal extends Fractal {
 
     private int[] channelBorders, channelIterations;
 
+    boolean importanceSamplingEnabled;
+
+    /**
+     * Points whose orbits enter the image, from which the Metropolis-Hastings chains start, and
+     * for each channel the mean number of steps in the image of the orbits of those that escape
+     * within the channel's iteration limit.
+     */
+    private double[] seedReals, seedImags;
+    private int numSeeds;
+    private double[] meanSeedContributions = new double[3];
+
 
     /**
      * Constructor function which initialises instance variables and
@@ -51,7 +115,8 @@ public class BhuddabrotFractal extends Fractal {
         this.iterator = new MandelbrotIterator(maxIterations);
         setOrder(1);
         this.colorStyle = ColorStyle.TWOCOLOUR;
-        this.randomStartingPoints = new Complex[this.numRandomPoints];
+        this.pointReals = new double[0];
+        this.pointImags = new double[0];
         this.nebulaModeEnabled = false;
         this.numThreads = Runtime.getRuntime().availableProcessors();
 
@@ -93,6 +158,50 @@ public class BhuddabrotFractal extends Fractal {
         this.nebulaModeEnabled = !this.nebulaModeEnabled;
     }
 
+    public boolean getExposureEnabled() {
+        return this.exposureEnabled;
+    }
+
+    /**
+     * Switches between rendering each frame afresh and accumulating an exposure. Switching it off
+     * discards the exposure.
+     */
+    public void toggleExposureEnabled() {
+        this.exposureEnabled = !this.exposureEnabled;
+        if (!this.exposureEnabled) {
+            this.exposure = null;
+            this.exposureKey = null;
+        }
+    }
+
+    public int getExposureBatches() {
+        return this.exposureBatches;
+    }
+
+    public void setExposureBatches(int exposureBatches) {
+        this.exposureBatches = exposureBatches;
+    }
+
+    public long getExposureSamples() {
+        return this.exposure == null ? 0 : this.exposureSamples;
+    }
+
+    public HistogramPrecision getHistogramPrecision() {
+        return this.histogramPrecision;
+    }
+
+    public void setHistogramPrecision(HistogramPrecision histogramPrecision) {
+        this.histogramPrecision = histogramPrecision;
+    }
+
+    public boolean getImportanceSamplingEnabled() {
+        return this.importanceSamplingEnabled;
+    }
+
+    public void toggleImportanceSamplingEnabled() {
+        this.importanceSamplingEnabled = !this.importanceSamplingEnabled;
+    }
+
     /**
      * Checks whether a given complex number lies within the region of the complex plane represented
      * by our image.
@@ -133,26 +242,11 @@ public class BhuddabrotFractal extends Fractal {
         this.origin.setImag(this.centre.getImag() + (this.dz * (0.5 * this.imageHeight - 0.5)));
         this.origin.setReal(this.centre.getReal() - (this.dz * (0.5 * this.imageWidth - 0.5)));
 
-        //randomStartingPoints = new Complex[this.numRandomPoints];
-        double randArg, randAbs;
-
-        int replaceCount = 0;
-
-        if (this.numRandomPoints != this.randomStartingPoints.length) {
-            this.randomStartingPoints = new Complex[numRandomPoints];
-        }
-
-        for (int i = 0; i < numRandomPoints; i++) {
-            if (randomStartingPoints[i] == null) {
-                randArg = Math.random() * 2 * Math.PI;
-                randAbs = Math.random() * 1.75 + 0.25;
-                randomStartingPoints[i] = (new Complex(Math.cos(randArg), Math.sin(randArg))).multiply(randAbs);
-                replaceCount ++;
-            }
+        // The importance sampler draws its own points, and an exposure draws new ones for each batch
+        if (!importanceSamplingEnabled && !exposureEnabled) {
+            drawStartingPoints(false);
         }
 
-        System.out.println("\nReplaced: " + replaceCount);
-
         fractalImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
         fractalPixels = ((DataBufferInt) fractalImage.getRaster().getDataBuffer()).getData();
         g2 = fractalImage.createGraphics();
@@ -174,53 +268,53 @@ public class BhuddabrotFractal extends Fractal {
         System.out.println("Setup time: " + (System.currentTimeMillis()-t1));
     }
 
-    public void createFractal() {
-
-        setupFractal();
-        newChannels = new int [numThreads][3][fractalPixels.length];
+    /**
+     * Draws starting points uniformly from the annulus between radii 0.25 and 2, either in place
+     * of those discarded by the last render or all of them afresh.
+     *
+     * @param replaceAll Whether to replace the points that were kept, too
+     */
+    private void drawStartingPoints(boolean replaceAll) {
 
-        long t1 = System.currentTimeMillis();
+        //randomStartingPoints = new Complex[this.numRandomPoints];
+        double randArg, randAbs;
 
-        int numIterations, pixelIndex;
-        Complex z_n;
-        ArrayList<Complex> escapingPoints = new ArrayList<>();
+        int replaceCount = 0;
 
-        // Filter out points that don't escape:
-        for (Complex c: randomStartingPoints) {
-            if (iterator.iterate(c)[0] == 1) { escapingPoints.add(c); }
+        if (this.numRandomPoints != this.pointReals.length) {
+            this.pointReals = new double[numRandomPoints];
+            this.pointImags = new double[numRandomPoints];
+            Arrays.fill(this.pointReals, Double.NaN);
         }
 
-        System.out.println("Check points time: " + (System.currentTimeMillis()-t1));
-
-        long t2 = System.currentTimeMillis();
-
-        // Track the escape of those that do escape:
-        for (Complex c: escapingPoints) {
-
-            numIterations = 1;
-            z_n = new Complex(c.getReal(), c.getImag());
-
-            while (numIterations < maxIterations) {
+        for (int i = 0; i < numRandomPoints; i++) {
+            if (replaceAll || Double.isNaN(pointReals[i])) {
+                randArg = Math.random() * 2 * Math.PI;
+                randAbs = Math.random() * 1.75 + 0.25;
+                pointReals[i] = randAbs * Math.cos(randArg);
+                pointImags[i] = randAbs * Math.sin(randArg);
+                replaceCount ++;
+            }
+        }
 
-                if (isPointInImage(z_n)) {
+        System.out.println("\nReplaced: " + replaceCount);
+    }
 
-                    pixelIndex = getPixelIndex(z_n);
-                    iterationCounts[pixelIndex] += 1;
+    public void createFractal() {
 
-                }
+        setupFractal();
 
-                if (z_n.abs2() > 4) {
-                    break;
-                }
+        long t1 = System.currentTimeMillis();
 
-                numIterations ++;
-                z_n = z_n.multiply(z_n).add(c);
-            }
-        }
+        // Every point counts towards the same histogram, whatever its channel
+        int[] targetChannels = {0, 0, 0};
+        int[] limits = {maxIterations, maxIterations, maxIterations};
 
-        escapingPoints.clear();
+        StripedHistogram passes = new StripedHistogram(histogramPrecision, 1, fractalPixels.length);
+        traceStartingPoints(0, 0, pointReals.length, passes, targetChannels, limits);
+        addPasses(passes);
 
-        System.out.println("Path tracing time: " + (System.currentTimeMillis()-t2));
+        System.out.println("Path tracing time: " + (System.currentTimeMillis()-t1));
 
         long t3 = System.currentTimeMillis();
 
@@ -228,16 +322,23 @@ public class BhuddabrotFractal extends Fractal {
             colorFractal();
         }
 
-        newChannels = null;
-
         System.out.println("Color time: " + (System.currentTimeMillis()-t3));
         System.out.println("Create time: " + (System.currentTimeMillis()-t1));
 
     }
 
+    /**
+     * In nebula mode the colours come from the channels, which are not kept once the image is made.
+     */
+    @Override
+    public void recolor() {
+        if (!this.nebulaModeEnabled) {
+            super.recolor();
+        }
+    }
+
     public void colorFractal() {
 
-        int index, numIter;
         int maxPixelIter = 0;
 
         for (int i: iterationCounts) {
@@ -254,16 +355,111 @@ public class BhuddabrotFractal extends Fractal {
             }
         }
 
-        setupColorMap(this.iterator.getOrder()+1, maxPixelIter+1);
+        int numSteps = Math.min(maxPixelIter, MAX_COLOUR_STEPS);
+        double scale = maxPixelIter > MAX_COLOUR_STEPS ? (double) MAX_COLOUR_STEPS / maxPixelIter : 1;
+
+        setupColorMap(this.iterator.getOrder()+1, numSteps+1);
 
         System.out.println("Max iteration for a pixel = " + maxPixelIter);
         System.out.println("Min iteration for a pixel = " + minPixelIter);
 
-        for (index=0; index<fractalPixels.length; index++) {
-            numIter = iterationCounts[index];
-            colorPixel(index, 1, numIter+1);
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            for (int index = y*imageWidth; index < (y + height)*imageWidth; index++) {
+                colorPixel(index, 1, (int) (iterationCounts[index] * scale) + 1);
+            }
+        });
+
+    }
+
+    /**
+     * Colours the image in nebula mode, each channel of a pixel in proportion to the number of
+     * passes through it in that channel, in bands of rows shared between the threads of the
+     * render pool.
+     *
+     * @param channels        The passes through each pixel in the red, green and blue channels
+     * @param maxRGBPixelIter The largest number of passes through a pixel in any channel
+     */
+    void colorChannels(StripedHistogram channels, double maxRGBPixelIter) {
+
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            float r, g, b;
+            for (int i = y*imageWidth; i < (y + height)*imageWidth; i++) {
+                r = (float) (channels.get(0, i) / maxRGBPixelIter);
+                g = (float) (channels.get(1, i) / maxRGBPixelIter);
+                b = (float) (channels.get(2, i) / maxRGBPixelIter);
+                fractalPixels[i] = packRGB(r, g, b);
+            }
+        });
+    }
+
+    /**
+     * Sets iterationCounts to the passes through each pixel in all three channels, in bands of
+     * rows shared between the threads of the render pool. If the largest total would overflow
+     * an int, all totals are scaled down alike, which the colouring is unaffected by.
+     *
+     * @param channels The passes through each pixel in the red, green and blue channels
+     * @return the largest number of passes through a pixel in the red, green and blue channels,
+     *         and in all three
+     */
+    double[] addChannels(StripedHistogram channels) {
+
+        DoubleAccumulator[] maxima = new DoubleAccumulator[4];
+        for (int c = 0; c < 4; c++) {
+            maxima[c] = new DoubleAccumulator(Math::max, 0);
         }
 
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            double maxRed = 0, maxGreen = 0, maxBlue = 0, maxTotal = 0;
+            for (int i = y*imageWidth; i < (y + height)*imageWidth; i++) {
+                maxRed = Math.max(channels.get(0, i), maxRed);
+                maxGreen = Math.max(channels.get(1, i), maxGreen);
+                maxBlue = Math.max(channels.get(2, i), maxBlue);
+                maxTotal = Math.max(channels.get(0, i) + channels.get(1, i) + channels.get(2, i), maxTotal);
+            }
+            maxima[0].accumulate(maxRed);
+            maxima[1].accumulate(maxGreen);
+            maxima[2].accumulate(maxBlue);
+            maxima[3].accumulate(maxTotal);
+        });
+
+        double scale = Math.min(1, Integer.MAX_VALUE / Math.max(maxima[3].get(), 1));
+
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            for (int i = y*imageWidth; i < (y + height)*imageWidth; i++) {
+                iterationCounts[i] = (int) ((channels.get(0, i) + channels.get(1, i) + channels.get(2, i)) * scale);
+            }
+        });
+
+        System.out.println("Histogram precision: " + channels.getPrecision() + " (" + (channels.getMemory() >> 20) + " MB), inexact passes: " + channels.getInexactPasses());
+
+        return new double[]{maxima[0].get(), maxima[1].get(), maxima[2].get(), maxima[3].get()};
+    }
+
+    /**
+     * Sets iterationCounts to the passes through each pixel in a single histogram, scaled down
+     * alike if the largest would overflow an int, as addChannels does for three.
+     */
+    private void addPasses(StripedHistogram passes) {
+
+        DoubleAccumulator maximum = new DoubleAccumulator(Math::max, 0);
+
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            double max = 0;
+            for (int i = y*imageWidth; i < (y + height)*imageWidth; i++) {
+                max = Math.max(passes.get(0, i), max);
+            }
+            maximum.accumulate(max);
+        });
+
+        double scale = Math.min(1, Integer.MAX_VALUE / Math.max(maximum.get(), 1));
+
+        runInBands(getRenderPool(), 0, imageHeight, (y, height) -> {
+            for (int i = y*imageWidth; i < (y + height)*imageWidth; i++) {
+                iterationCounts[i] = (int) (passes.get(0, i) * scale);
+            }
+        });
+
+        System.out.println("Histogram precision: " + passes.getPrecision() + " (" + (passes.getMemory() >> 20) + " MB), inexact passes: " + passes.getInexactPasses());
     }
 
     int getChannelCoeff (int pointIndex) {
@@ -282,9 +478,105 @@ public class BhuddabrotFractal extends Fractal {
 
         setupFractal();
 
+        if (exposureEnabled) {
+            exposeFractal();
+            return;
+        }
+
         long t1 = System.currentTimeMillis();
 
-        newChannels = new int[numThreads][3][fractalPixels.length];
+        StripedHistogram passes = new StripedHistogram(histogramPrecision, 3, fractalPixels.length);
+        renderBatch(passes, false);
+
+        long t2 = System.currentTimeMillis();
+        toneMap(passes);
+
+        long t3 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t2-t1) + ", colouring time: " + (t3-t2));
+        System.out.println("Create time: " + (t3-t1));
+
+    }
+
+    /**
+     * Adds batches of numRandomPoints samples to the exposure, colouring the image from it and
+     * passing it to the progress listener after each batch, until exposureBatches batches have
+     * been added or the render is cancelled. The exposure is resumed if the view and the settings
+     * it depends on are unchanged since it was last added to, and started afresh otherwise.
+     *
+     * Each batch is traced into histograms of its own and added to the exposure only once it is
+     * complete, so a cancelled batch leaves the exposure as it was and every pass in it is counted.
+     */
+    private void exposeFractal() {
+
+        long t1 = System.currentTimeMillis();
+
+        List<Object> key = Arrays.asList(getCentreRealString(), getCentreImagString(), zoomLevel,
+                imageWidth, imageHeight, maxIterations, histogramPrecision, importanceSamplingEnabled,
+                Arrays.toString(iterCoeffs), Arrays.toString(pointCoeffs));
+
+        if (exposure == null || !key.equals(exposureKey)) {
+            exposure = new StripedHistogram(histogramPrecision, 3, fractalPixels.length);
+            exposureKey = key;
+            exposureSamples = 0;
+            exposureScales = null;
+            System.out.println("Starting a new exposure");
+        } else {
+            System.out.println("Resuming the exposure of " + exposureSamples + " samples");
+        }
+
+        StripedHistogram batchPasses = new StripedHistogram(histogramPrecision, 3, fractalPixels.length);
+        long t2, t3;
+
+        for (int batch = 0; batch < exposureBatches && !isRenderCancelled(); batch++) {
+
+            t2 = System.currentTimeMillis();
+
+            if (!importanceSamplingEnabled) {
+                drawStartingPoints(true);
+            }
+            if (batch > 0) {
+                batchPasses.clear();
+            }
+            renderBatch(batchPasses, true);
+
+            // A cancelled batch is dropped along with its histograms
+            if (isRenderCancelled()) {
+                break;
+            }
+            exposure.addAll(batchPasses);
+            exposureSamples += numRandomPoints;
+
+            t3 = System.currentTimeMillis();
+            toneMap(exposure);
+            publishPreview();
+
+            System.out.println("Exposure of " + exposureSamples + " samples, batch time: " + (t3-t2) + ", colouring time: " + (System.currentTimeMillis()-t3));
+        }
+
+        System.out.println("Create time: " + (System.currentTimeMillis()-t1));
+    }
+
+    /**
+     * Samples numRandomPoints starting points on the render threads, adding their orbits to the
+     * given histograms.
+     *
+     * @param exposing Whether the histograms are a batch of the exposure
+     */
+    private void renderBatch(StripedHistogram passes, boolean exposing) {
+
+        histogram = passes;
+
+        if (importanceSamplingEnabled) {
+            findSeeds();
+            // The batches of an exposure are weighted alike, so they add up correctly
+            if (exposing) {
+                if (exposureScales == null) {
+                    exposureScales = meanSeedContributions.clone();
+                } else {
+                    meanSeedContributions = exposureScales.clone();
+                }
+            }
+        }
 
         MultithreadedBhuddabrotRenderer bhuddabrotRenderer = new MultithreadedBhuddabrotRenderer();
 
@@ -295,115 +587,303 @@ public class BhuddabrotFractal extends Fractal {
             e.printStackTrace();
         }
 
-        // Maximum overall number of passes though a pixel
-        int maxPixelIter = 0;
+        histogram = null;
+    }
 
-        // Maximum number of passes though a pixel during red, green, and blue channel iterations
-        int maxRedPixelIter = 0;
-        int maxGreenPixelIter = 0;
-        int maxBluePixelIter = 0;
+    /**
+     * Sets iterationCounts from the given histograms and colours the image from them.
+     */
+    private void toneMap(StripedHistogram passes) {
 
-        for (int i = 0; i < fractalPixels.length; i++) {
+        double[] maxima = addChannels(passes);
 
-            for (int j=1; j<numThreads; j++) {
-                newChannels[0][0][i] += newChannels[j][0][i];
-                newChannels[0][1][i] += newChannels[j][1][i];
-                newChannels[0][2][i] += newChannels[j][2][i];
-            }
+        double maxRGBPixelIter = Math.max(maxima[0], Math.max(maxima[1], maxima[2]));
 
-            maxRedPixelIter = Math.max(newChannels[0][0][i], maxRedPixelIter);
-            maxGreenPixelIter = Math.max(newChannels[0][1][i], maxGreenPixelIter);
-            maxBluePixelIter = Math.max(newChannels[0][2][i], maxBluePixelIter);
+        System.out.println("Max pixel iterations (r,g,b,total): (" + maxima[0] + ", " + maxima[1] + ", " + maxima[2] + ", " + maxima[3] +")");
 
-            iterationCounts[i] += (newChannels[0][0][i] + newChannels[0][1][i] + newChannels[0][2][i]);
-            maxPixelIter = Math.max(iterationCounts[i], maxPixelIter);
+        if (!nebulaModeEnabled) {
+            colorFractal();
+        } else {
+            colorChannels(passes, maxRGBPixelIter);
         }
+    }
 
-        int maxRGBPixelIter = Math.max(maxRedPixelIter, Math.max(maxGreenPixelIter, maxBluePixelIter));
+    void renderChannel(int threadNum, int start, int numPoints) {
+        traceStartingPoints(threadNum, start, numPoints, histogram, new int[]{0, 1, 2}, channelIterations);
+    }
+
+    /**
+     * Traces the orbits of the given range of starting points, adding each pass through a pixel to
+     * the histogram of the point's channel through a Writer of its own. Only points that escape within the iteration limit of
+     * their channel are traced; they are found a block at a time, and their indices compacted so
+     * that the tracing runs through them in order. Points that don't escape, or whose orbits never
+     * enter the image, are discarded.
+     *
+     * @param label      Identifies the range in the log
+     * @param histogram      The histograms to add to
+     * @param targetChannels The channel of histogram that the points of each channel, as numbered
+     *                       by getChannelCoeff, are added to
+     * @param limits         The iteration limit within which a point of each channel must escape
+     */
+    void traceStartingPoints(int label, int start, int numPoints, StripedHistogram histogram, int[] targetChannels, int[] limits) {
 
-        System.out.println("Max pixel iterations (r,g,b,total): (" + maxRedPixelIter + ", " + maxGreenPixelIter + ", " + maxBluePixelIter + ", " + maxPixelIter +")");
+        MandelbrotIterator mandelbrotIterator = (MandelbrotIterator) iterator;
+        CycleDetector cycle = mandelbrotIterator.newCycleDetector();
 
-        if (!nebulaModeEnabled) {
-            colorFractal();
-        } else {
+        int[] escaping = new int[POINT_BLOCK];
+        int[] orbit = new int[maxIterations+1];
+        StripedHistogram.Writer writer = histogram.newWriter();
+        int numEscaping, blockEnd, channel, i, length;
 
-            float r, g, b;
+        int neverEntersCount = 0;
+        int escapeCount = 0;
 
-            for (int i = 0; i < fractalPixels.length; i++) {
-                r = (float)newChannels[0][0][i] / (float)maxRGBPixelIter;
-                g = (float)newChannels[0][1][i] / (float)maxRGBPixelIter;
-                b = (float)newChannels[0][2][i] / (float)maxRGBPixelIter;
-                fractalPixels[i] = new Color(r, g, b).getRGB();
+        for (int blockStart = start; blockStart < start+numPoints && !isRenderCancelled(); blockStart += POINT_BLOCK) {
+
+            blockEnd = Math.min(blockStart + POINT_BLOCK, start+numPoints);
+            numEscaping = 0;
+
+            for (i = blockStart; i < blockEnd; i++) {
+                if (Iterator.resultColorNum(mandelbrotIterator.iterate(pointReals[i], pointImags[i], limits[getChannelCoeff(i)], cycle)) == 0) {
+                    pointReals[i] = Double.NaN;
+                } else {
+                    escaping[numEscaping++] = i;
+                }
             }
 
+            escapeCount += numEscaping;
+
+            for (int k = 0; k < numEscaping; k++) {
+
+                i = escaping[k];
+                channel = targetChannels[getChannelCoeff(i)];
+                length = traceOrbit(pointReals[i], pointImags[i], maxIterations, orbit);
+
+                if (length == 0) {
+                    pointReals[i] = Double.NaN;
+                    neverEntersCount ++;
+                } else {
+                    for (int j = 0; j < length; j++) {
+                        writer.add(channel, orbit[j], 1);
+                    }
+                }
+            }
         }
 
-        newChannels = null;
+        writer.flush();
 
-        System.out.println("Create time: " + (System.currentTimeMillis()-t1));
+        System.out.println("No escaping points ("+label+"): " + escapeCount);
+        System.out.println("No never-entering points ("+label+"): " + neverEntersCount);
 
     }
 
-    void renderChannel(int threadNum, int start, int numPoints) {
+    // ========================================================
+    // Metropolis-Hastings importance sampling.
+    // ========================================================
 
-        int numIterations, pixelIndex, channelCoeff;
-        Complex c, z_n;
-        boolean neverEntersImage;
+    /*
+     * Away from zoom level 1 almost no orbits from uniformly drawn points pass through the image.
+     * Instead each thread runs a Markov chain over the points of the annulus whose stationary
+     * distribution is the uniform sampler's, weighted by the number of orbit steps that land in the
+     * image. Each proposal either mutates the current point by a small random step or, now and
+     * then, draws a new point as setupFractal does, so the chain cannot get stuck on one feature.
+     *
+     * Since the chain favours points in proportion to their contribution, the orbit of each state
+     * is added to the histogram with weight inversely proportional to it. The weight is scaled to
+     * add as many passes per sample as an average uniformly drawn point contributing to the same
+     * channel would, and rounded at random to keep the histograms in whole numbers.
+     */
 
-        int [] result;
+    /**
+     * Draws uniform points until NUM_SEEDS of them have orbits entering the image, or as many
+     * points have been drawn as there are samples to take, and finds the mean contribution of
+     * each channel from them. A seed escaping within a channel's iteration limit contributes its
+     * steps in the image to that channel's mean; since a point that escapes within a lower limit
+     * escapes within maxIterations too, these seeds are uniformly drawn among the points that
+     * contribute to the channel.
+     */
+    private void findSeeds() {
 
-        int neverEntersCount = 0;
-        int escapeCount = 0;
+        long t1 = System.currentTimeMillis();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] orbit = new int[maxIterations+1];
+        double arg, abs, re, im;
+        int contribution, attempts;
+        long[] totalContributions = new long[3];
+        int[] channelSeeds = new int[3];
+
+        seedReals = new double[NUM_SEEDS];
+        seedImags = new double[NUM_SEEDS];
+        numSeeds = 0;
+
+        for (attempts = 0; attempts < numRandomPoints && numSeeds < NUM_SEEDS; attempts++) {
+            arg = random.nextDouble() * 2 * Math.PI;
+            abs = random.nextDouble() * 1.75 + 0.25;
+            re = abs * Math.cos(arg);
+            im = abs * Math.sin(arg);
+            if (traceOrbit(re, im, maxIterations, orbit) == 0) {
+                continue;
+            }
+            seedReals[numSeeds] = re;
+            seedImags[numSeeds] = im;
+            numSeeds ++;
+            for (int channel = 0; channel < 3; channel++) {
+                contribution = traceOrbit(re, im, channelIterations[channel], orbit);
+                if (contribution > 0) {
+                    totalContributions[channel] += contribution;
+                    channelSeeds[channel] ++;
+                }
+            }
+        }
 
-        for (int i=start; i<start+numPoints; i++) {
+        for (int channel = 0; channel < 3; channel++) {
+            meanSeedContributions[channel] = channelSeeds[channel] == 0 ? 0 : (double) totalContributions[channel] / channelSeeds[channel];
+        }
 
-            neverEntersImage = true;
-            channelCoeff = getChannelCoeff(i); //int) (3 * (float)i / (float)(numRandomPoints+1));
+        System.out.println("Found " + numSeeds + " seeds in " + attempts + " uniform points, mean contributions (r,g,b): "
+                + String.format("(%.1f, %.1f, %.1f)", meanSeedContributions[0], meanSeedContributions[1], meanSeedContributions[2]));
+        System.out.println("Seed time: " + (System.currentTimeMillis()-t1));
+    }
 
-            result = ((MandelbrotIterator)iterator).iterate(randomStartingPoints[i], channelIterations[channelCoeff]);
+    /**
+     * Takes numSamples samples from a Metropolis-Hastings chain, adding the orbits to the
+     * histograms through a Writer of its own. Sample i is added to the channel of point i, as in
+     * renderChannel.
+     */
+    void sampleChannel(int threadNum, int start, int numSamples) {
 
-            if (result[0] == 0) {
-                randomStartingPoints[i] = null;
-            } else {
-                c = randomStartingPoints[i];
-                escapeCount ++;
-                numIterations = 1;
-                z_n = new Complex(c.getReal(), c.getImag());
+        if (numSeeds == 0) {
+            System.out.println("No points found whose orbits enter the image (" + threadNum + ")");
+            return;
+        }
 
-                while (numIterations < maxIterations) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] orbit = new int[maxIterations+1];
+        int[] proposal = new int[maxIterations+1];
+        int[] swap;
+        StripedHistogram.Writer writer = histogram.newWriter();
 
-                    if (isPointInImage(z_n)) {
+        double re = seedReals[threadNum % numSeeds];
+        double im = seedImags[threadNum % numSeeds];
+        int channelCoeff = getChannelCoeff(start);
+        int length = traceOrbit(re, im, channelIterations[channelCoeff], orbit);
 
-                        neverEntersImage = false;
-                        pixelIndex = getPixelIndex(z_n);
+        double minMutation = MIN_MUTATION * imageHeight * dz;
+        double logMutationRange = Math.log(MAX_MUTATION / MIN_MUTATION);
 
-                        try {
-                            newChannels[threadNum][channelCoeff][pixelIndex] ++;
-                        } catch (ArrayIndexOutOfBoundsException e) {
-                            System.out.println("Array index exception i="+i+" coeff="+channelCoeff);
-                        }
+        double arg, abs, newRe, newIm, acceptance, weight, fraction;
+        int newLength, whole, amount;
+        boolean uniform;
 
-                    }
+        long mutations = 0, acceptedMutations = 0, uniforms = 0, acceptedUniforms = 0, contributing = 0;
 
-                    if (z_n.abs2() > 4) {
-                        break;
-                    }
+        for (int i = start; i < start+numSamples; i++) {
 
-                    numIterations ++;
-                    z_n = z_n.multiply(z_n).add(c);
+            if ((i - start) % POINT_BLOCK == 0 && isRenderCancelled()) {
+                break;
+            }
+
+            if (getChannelCoeff(i) != channelCoeff) {
+                channelCoeff = getChannelCoeff(i);
+                length = traceOrbit(re, im, channelIterations[channelCoeff], orbit);
+            }
+
+            uniform = random.nextDouble() < UNIFORM_PROPOSAL_PROBABILITY;
+            if (uniform) {
+                arg = random.nextDouble() * 2 * Math.PI;
+                abs = random.nextDouble() * 1.75 + 0.25;
+                newRe = abs * Math.cos(arg);
+                newIm = abs * Math.sin(arg);
+                uniforms ++;
+            } else {
+                arg = random.nextDouble() * 2 * Math.PI;
+                abs = minMutation * Math.exp(logMutationRange * random.nextDouble());
+                newRe = re + abs * Math.cos(arg);
+                newIm = im + abs * Math.sin(arg);
+                mutations ++;
+            }
+
+            // Points outside the annulus are never drawn uniformly, so are worth nothing
+            abs = Math.sqrt(newRe*newRe + newIm*newIm);
+            newLength = abs < 0.25 || abs > 2 ? 0 : traceOrbit(newRe, newIm, channelIterations[channelCoeff], proposal);
+
+            if (newLength > 0) {
+                contributing ++;
+
+                if (length == 0) {
+                    acceptance = 1;
+                } else if (uniform) {
+                    acceptance = (double) newLength / length;
+                } else {
+                    // Uniform points are drawn with density inversely proportional to their modulus
+                    acceptance = (newLength * Math.sqrt(re*re + im*im)) / (length * abs);
                 }
 
-                if (neverEntersImage) {
-                    randomStartingPoints[i] = null;
-                    neverEntersCount ++;
+                if (acceptance >= 1 || random.nextDouble() < acceptance) {
+                    swap = orbit;
+                    orbit = proposal;
+                    proposal = swap;
+                    length = newLength;
+                    re = newRe;
+                    im = newIm;
+                    if (uniform) {
+                        acceptedUniforms ++;
+                    } else {
+                        acceptedMutations ++;
+                    }
                 }
             }
 
+            if (length > 0) {
+                weight = meanSeedContributions[channelCoeff] / length;
+                whole = (int) weight;
+                fraction = weight - whole;
+                for (int k = 0; k < length; k++) {
+                    amount = random.nextDouble() < fraction ? whole + 1 : whole;
+                    if (amount > 0) {
+                        writer.add(channelCoeff, orbit[k], amount);
+                    }
+                }
+            }
         }
 
-        System.out.println("No escaping points ("+threadNum+"): " + escapeCount);
-        System.out.println("No never-entering points ("+threadNum+"): " + neverEntersCount);
+        writer.flush();
+
+        System.out.println("Accepted mutations (" + threadNum + "): " + acceptedMutations + " of " + mutations);
+        System.out.println("Accepted uniform points (" + threadNum + "): " + acceptedUniforms + " of " + uniforms);
+        System.out.println("Contributing proposals (" + threadNum + "): " + contributing + " of " + numSamples);
+    }
+
+    /**
+     * Follows the orbit of c for at most limit iterations, storing the pixel index of each step
+     * that lands in the image. Returns the number of steps stored, or 0 if the orbit does not escape.
+     */
+    int traceOrbit(double cRe, double cIm, int limit, int[] orbit) {
+
+        double originRe = origin.getReal();
+        double originIm = origin.getImag();
+        double zRe = cRe, zIm = cIm, temp;
+        int x, y, length = 0;
+
+        for (int n = 1; n <= limit; n++) {
+
+            x = (int) Math.floor((zRe - originRe) / dz + 0.5);
+            y = (int) Math.floor((originIm - zIm) / dz + 0.5);
+            if (x >= 0 && x < imageWidth && y >= 0 && y < imageHeight) {
+                orbit[length++] = y*imageWidth + x;
+            }
+
+            if (zRe*zRe + zIm*zIm > 4) {
+                return length;
+            }
 
+            temp = zRe*zRe - zIm*zIm + cRe;
+            zIm = 2*zRe*zIm + cIm;
+            zRe = temp;
+        }
+
+        return 0;
     }
 
     class MultithreadedBhuddabrotRenderer extends MultithreadedRenderer {
@@ -424,25 +904,22 @@ public class BhuddabrotFractal extends Fractal {
                 sectionBorders[i] = i*(getNumRandomPoints()/numThreads);
             }
 
-            ExecutorService renderPool = Executors.newFixedThreadPool(numThreads);
-
+            // The sections are run as tasks in the shared render pool
+            ForkJoinTask<?>[] sectionTasks = new ForkJoinTask<?>[numThreads];
             for(int i=0; i<numThreads; i++) {
-                renderPool.execute(createRenderThread(i));
-            }
-
-            renderPool.shutdown();
-
-            try {
-                renderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                sectionTasks[i] = ForkJoinTask.adapt(createRenderThread(i));
             }
+            getRenderPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(sectionTasks)));
         }
 
         public void renderSection(int sectionIndex) {
             int start = sectionBorders[sectionIndex];
             int length = sectionBorders[sectionIndex+1] - start;
-            renderChannel(sectionIndex, start, length);
+            if (importanceSamplingEnabled) {
+                sampleChannel(sectionIndex, start, length);
+            } else {
+                renderChannel(sectionIndex, start, length);
+            }
         }
 
     }
@@ -15,6 +15,14 @@ public class BurningShipFractal extends Fractal {
     }
 
 
+    /**
+     * The image is drawn upside down, so that the ship is upright.
+     */
+    @Override
+    boolean isImageFlipped() {
+        return true;
+    }
+
     /**
      * Colors a pixel in the image. Overrides method in fractal to account for inversion of desired image.
      *
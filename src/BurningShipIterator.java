@@ -6,26 +6,84 @@ public class BurningShipIterator extends Iterator {
 
     @Override
     int[] iterate(Complex p) {
-        int[] result = new int[2];
+        return unpackResult(iterate(p.getReal(), p.getImag()));
+    }
+
+    /**
+     * Primitive Burning Ship kernel: iterates z -> (|Re z| + i|Im z|)^2 + p using plain doubles.
+     *
+     * @return the colour number (1 if escaped, 0 otherwise) and iteration count, packed by packResult
+     */
+    @Override
+    long iterate(double x, double y) {
+        return iterate(x, y, threadCycleDetector());
+    }
 
-        Complex z_n = new Complex();
-        result[1] = 1;
+    private long iterate(double x, double y, CycleDetector cycle) {
+        int n = 1;
+        double zRe = 0, zIm = 0, temp;
 
-        while (result[1] < this.maxIterations && z_n.abs2() < 4) {
+        cycle.reset(0, 0);
 
-            z_n.setReal(Math.abs(z_n.getReal()));
-            z_n.setImag(Math.abs(z_n.getImag()));
+        while (n < this.maxIterations && zRe * zRe + zIm * zIm < 4) {
 
-            z_n = z_n.multiply(z_n).add(p);
+            zRe = Math.abs(zRe);
+            zIm = Math.abs(zIm);
 
-            result[1] ++;
+            temp = zRe * zRe - zIm * zIm + x;
+            zIm = zRe * zIm + zIm * zRe + y;
+            zRe = temp;
+
+            n ++;
+
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, this.maxIterations);
+            }
         }
-        if (result[1] == this.maxIterations) {
-            result[0] = 0;
+        return packResult(n == this.maxIterations ? 0 : 1, n);
+    }
+
+    @Override
+    boolean supportsDoubleDouble() {
+        return true;
+    }
+
+    /**
+     * Double-double equivalent of the primitive kernel, working in the scratch numbers of the
+     * calling thread.
+     */
+    @Override
+    long iterate(DoubleDouble x, DoubleDouble y, CycleDetector cycle) {
+        int n = 1;
+        DoubleDouble[] scratch = threadDoubleDoubles();
+        DoubleDouble zRe = scratch[0].set(0), zIm = scratch[1].set(0), temp = scratch[2];
+        cycle.reset(zRe, zIm);
+        while (n < this.maxIterations && zRe.hi * zRe.hi + zIm.hi * zIm.hi < 4) {
+            zRe.abs();
+            zIm.abs();
+            temp.set(zIm).square();
+            zIm.multiply(zRe).twice().add(y);
+            zRe.square().subtract(temp).add(x);
+            n ++;
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, this.maxIterations);
+            }
         }
-        else {
-            result[0] = 1;
+        return packResult(n == this.maxIterations ? 0 : 1, n);
+    }
+
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        CycleDetector cycle = newCycleDetector();
+        long result;
+        for (int i = x; i < x + length; i++) {
+            result = iterate(originRe + i * dRe, im, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
+            }
         }
-        return result;
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * Brent-style periodicity checking for escape-time iterators.
+ *
+ * Points inside the set never escape, so without a check they use up every one of maxIterations.
+ * Their orbits are attracted to a cycle instead, which is detected by saving a point of the orbit
+ * and comparing each following point against it, refreshing the saved point after intervals of
+ * 1, 2, 4, 8, ... iterations. Once the orbit has settled and the interval is at least the period,
+ * the orbit returns to within tolerance of the saved point after exactly one period. Kernels then
+ * stop and report the point exactly as if it had used every iteration without escaping, so images
+ * (including supersampled ones) are unchanged; only the time spent differs.
+ *
+ * A detector is reset at the start of each orbit and reused for every point of a row, so no
+ * objects are created per iteration or per point. Detectors are not thread safe; each rendering
+ * thread uses its own.
+ */
+final class CycleDetector {
+
+    private double tolerance2;
+
+    private double savedRe, savedIm, savedReLo, savedImLo;
+
+    private int interval, steps;
+
+    /**
+     * The period of the cycle found in the current orbit, or 0 if none has been found.
+     */
+    int period;
+
+    /**
+     * Constructor.
+     *
+     * @param tolerance The distance within which a point counts as a return to the saved point
+     */
+    CycleDetector(double tolerance) {
+        this.tolerance2 = tolerance * tolerance;
+    }
+
+    /**
+     * Sets the distance within which a point counts as a return to the saved point.
+     */
+    void setTolerance(double tolerance) {
+        this.tolerance2 = tolerance * tolerance;
+    }
+
+    /**
+     * Starts a new orbit at z_0 = zRe + i*zIm.
+     */
+    void reset(double zRe, double zIm) {
+        this.savedRe = zRe;
+        this.savedIm = zIm;
+        this.savedReLo = 0;
+        this.savedImLo = 0;
+        this.interval = 1;
+        this.steps = 0;
+        this.period = 0;
+    }
+
+    /**
+     * Starts a new orbit at z_0 = zRe + i*zIm, in double-double precision.
+     */
+    void reset(DoubleDouble zRe, DoubleDouble zIm) {
+        reset(zRe.hi, zIm.hi);
+        this.savedReLo = zRe.lo;
+        this.savedImLo = zIm.lo;
+    }
+
+    /**
+     * Checks the next point of the orbit. Returns true, setting period, if it is within tolerance
+     * of the saved point.
+     */
+    boolean isPeriodic(double zRe, double zIm) {
+        double dRe = zRe - this.savedRe;
+        double dIm = zIm - this.savedIm;
+        return check(zRe, zIm, 0, 0, dRe * dRe + dIm * dIm);
+    }
+
+    /**
+     * Double-double equivalent of isPeriodic(double, double). The difference of two nearby
+     * leading parts is exact, so the trailing parts keep the comparison accurate to well below
+     * the spacing of doubles.
+     */
+    boolean isPeriodic(DoubleDouble zRe, DoubleDouble zIm) {
+        double dRe = (zRe.hi - this.savedRe) + (zRe.lo - this.savedReLo);
+        double dIm = (zIm.hi - this.savedIm) + (zIm.lo - this.savedImLo);
+        return check(zRe.hi, zIm.hi, zRe.lo, zIm.lo, dRe * dRe + dIm * dIm);
+    }
+
+    private boolean check(double zRe, double zIm, double zReLo, double zImLo, double distance2) {
+        this.steps++;
+        if (distance2 <= this.tolerance2) {
+            this.period = this.steps;
+            return true;
+        }
+        if (this.steps == this.interval) {
+            this.savedRe = zRe;
+            this.savedIm = zIm;
+            this.savedReLo = zReLo;
+            this.savedImLo = zImLo;
+            this.steps = 0;
+            this.interval <<= 1;
+        }
+        return false;
+    }
+}
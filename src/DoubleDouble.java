@@ -0,0 +1,159 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/*
+ * A mutable double-double number: an unevaluated sum hi + lo of two doubles with |lo| <= ulp(hi)/2,
+ * giving about 106 bits (32 decimal digits) of precision at a small multiple of the cost of a double.
+ *
+ * Instances are modified in place: every arithmetic method overwrites this number with the result
+ * and returns it, so iteration kernels can work in a fixed set of preallocated numbers without
+ * creating any objects per iteration.
+ *
+ * The algorithms are the standard error-free transformations (Dekker, Knuth), with the exact
+ * product error computed by Math.fma.
+ */
+public final class DoubleDouble {
+
+    private static final MathContext DECIMAL_PRECISION = new MathContext(34);
+
+    /**
+     * The leading and trailing parts of the number.
+     */
+    double hi, lo;
+
+    public DoubleDouble() {}
+
+    public DoubleDouble(double value) {
+        this.hi = value;
+    }
+
+    public DoubleDouble(BigDecimal value) {
+        set(value);
+    }
+
+    // ========================================================
+    // Accessor and mutator methods
+    // ========================================================
+
+    public DoubleDouble set(double value) {
+        this.hi = value;
+        this.lo = 0;
+        return this;
+    }
+
+    public DoubleDouble set(DoubleDouble other) {
+        this.hi = other.hi;
+        this.lo = other.lo;
+        return this;
+    }
+
+    /**
+     * Sets this number to the double-double nearest to the given decimal.
+     */
+    public DoubleDouble set(BigDecimal value) {
+        this.hi = value.doubleValue();
+        this.lo = value.subtract(new BigDecimal(this.hi)).doubleValue();
+        return this;
+    }
+
+    public double doubleValue() {
+        return this.hi + this.lo;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(this.hi).add(new BigDecimal(this.lo));
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().round(DECIMAL_PRECISION).toString();
+    }
+
+    // ========================================================
+    // Arithmetic, in place
+    // ========================================================
+
+    public DoubleDouble add(double b) {
+        double s = this.hi + b;
+        double v = s - this.hi;
+        double e = (this.hi - (s - v)) + (b - v) + this.lo;
+        this.hi = s + e;
+        this.lo = e - (this.hi - s);
+        return this;
+    }
+
+    public DoubleDouble add(DoubleDouble b) {
+        double s = this.hi + b.hi;
+        double v = s - this.hi;
+        double e = (this.hi - (s - v)) + (b.hi - v);
+        double t = this.lo + b.lo;
+        double w = t - this.lo;
+        double f = (this.lo - (t - w)) + (b.lo - w);
+        e += t;
+        double u = s + e;
+        e = e - (u - s) + f;
+        this.hi = u + e;
+        this.lo = e - (this.hi - u);
+        return this;
+    }
+
+    public DoubleDouble subtract(DoubleDouble b) {
+        this.hi = -this.hi;
+        this.lo = -this.lo;
+        add(b);
+        return negate();
+    }
+
+    public DoubleDouble multiply(double b) {
+        double p = this.hi * b;
+        double e = Math.fma(this.hi, b, -p) + this.lo * b;
+        this.hi = p + e;
+        this.lo = e - (this.hi - p);
+        return this;
+    }
+
+    public DoubleDouble multiply(DoubleDouble b) {
+        double p = this.hi * b.hi;
+        double e = Math.fma(this.hi, b.hi, -p) + (this.hi * b.lo + this.lo * b.hi);
+        this.hi = p + e;
+        this.lo = e - (this.hi - p);
+        return this;
+    }
+
+    public DoubleDouble square() {
+        double p = this.hi * this.hi;
+        double e = Math.fma(this.hi, this.hi, -p) + 2 * this.hi * this.lo;
+        this.hi = p + e;
+        this.lo = e - (this.hi - p);
+        return this;
+    }
+
+    /**
+     * Doubles this number, which is exact.
+     */
+    public DoubleDouble twice() {
+        this.hi *= 2;
+        this.lo *= 2;
+        return this;
+    }
+
+    public DoubleDouble negate() {
+        this.hi = -this.hi;
+        this.lo = -this.lo;
+        return this;
+    }
+
+    public DoubleDouble abs() {
+        return this.hi < 0 ? negate() : this;
+    }
+
+    // ========================================================
+    // Tester function.
+    // ========================================================
+
+    public static void main(String[] args) {
+        DoubleDouble third = new DoubleDouble(1).multiply(new DoubleDouble(new BigDecimal("0.333333333333333333333333333333333")));
+        System.out.println(third);
+        System.out.println(new DoubleDouble(0.1).add(1e-20).subtract(new DoubleDouble(0.1)));
+    }
+}
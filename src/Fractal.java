@@ -4,7 +4,13 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 enum ColorStyle {NO_SHADING, RAINBOW, THREECOLOUR, TWOCOLOUR}
 
@@ -25,6 +31,31 @@ public abstract class Fractal {
      */
     Complex centre;
 
+    /**
+     * The centre and top-left corner in double-double precision. centre and origin hold the
+     * nearest doubles; these are used when pixels are too small to resolve in double precision.
+     */
+    final DoubleDouble ddCentreRe = new DoubleDouble(), ddCentreIm = new DoubleDouble();
+    final DoubleDouble ddOriginRe = new DoubleDouble(), ddOriginIm = new DoubleDouble();
+
+    /**
+     * Relative pixel size (dz / max(|centre|, 1)) below which neighbouring pixels can no longer
+     * be told apart in double precision, and iterators that support it switch to double-double.
+     */
+    static final double DOUBLE_DOUBLE_THRESHOLD = 1.0e-13;
+
+    /**
+     * Relative pixel size below which double-double can no longer tell pixels apart either.
+     */
+    static final double DOUBLE_DOUBLE_LIMIT = 1.0e-28;
+
+    /**
+     * True while the current frame is iterated in double-double precision.
+     */
+    boolean doubleDoubleActive;
+
+    private boolean doubleDoubleEnabled = true;
+
     /**
      * A reference height in the complex plane for use in construction
      */
@@ -41,9 +72,15 @@ public abstract class Fractal {
     ColorStyle colorStyle;
 
     /**
-     * An array holding colours of the image for continuous colouring modes
+     * The colour of every colour number and iteration count, as packed ARGB: a pixel with
+     * colour number c that took n iterations has colour palette[c*paletteStride + n]. Built by
+     * setupColorMap, and kept between frames until the style, colours or number of steps change.
      */
-    Color[][] colorMap;
+    int[] palette;
+    int paletteStride;
+    private ColorStyle paletteStyle;
+    private Color[] paletteColors;
+    private int paletteNumColors;
 
     /**
      * A standard Java object which allows us to store a simple image in
@@ -89,9 +126,33 @@ public abstract class Fractal {
 
     int [] iterationCounts;
     int [] pixelColorNums; // Rename pixelColorIDs?
+
+    /**
+     * The period of the cycle detected for each interior pixel, or 0 where none was detected.
+     */
+    int [] pixelPeriods;
+
+    /**
+     * The iteration count of each finished pixel as iterated, before any supersampling, and
+     * whether the pixel was supersampled, so that translateFractal can find edges between the
+     * pixels it keeps and those it uncovers.
+     */
+    int [] iteratedCounts;
+    boolean [] pixelSupersampled;
     float [] pixelHues;
     int [] numPixelsPerIteration;
 
+    /**
+     * The number of pixels actually iterated when the image was last rendered, rather than
+     * filled in from their neighbours. Supersamples are not counted.
+     */
+    long iteratedPixels;
+
+    /**
+     * The number of pixels supersampled when the image was last rendered or moved.
+     */
+    long supersampledPixels;
+
     /**
      * Constructor function which initialises instance variables and
      * sets up for the creation of fractalImage
@@ -108,9 +169,14 @@ public abstract class Fractal {
         this.imageWidth    = imageWidth;
         this.zoomLevel     = zoomLevel;
         this.centre        = centre;
+        this.ddCentreRe.set(centre.getReal());
+        this.ddCentreIm.set(centre.getImag());
 
         this.numThreads = Runtime.getRuntime().availableProcessors();
         this.fractalRenderer = new MultithreadedRenderer();
+        this.subdivisionRenderer = new SubdivisionRenderer();
+        this.boundaryTracer = new BoundaryTracer();
+        this.progressiveRenderer = new ProgressiveRenderer();
     }
 
     // ========================================================
@@ -131,11 +197,47 @@ public abstract class Fractal {
     public void setCentre(Complex centre) {
         this.centre.setReal(centre.getReal());
         this.centre.setImag(centre.getImag());
+        this.ddCentreRe.set(centre.getReal());
+        this.ddCentreIm.set(centre.getImag());
     }
 
     public void setCentre(double x, double y) {
         this.centre.setReal(x);
         this.centre.setImag(y);
+        this.ddCentreRe.set(x);
+        this.ddCentreIm.set(y);
+    }
+
+    /**
+     * Sets the centre to the double-double values nearest the given decimals. Fractals that can
+     * hold the centre to even more precision override this to keep every digit.
+     */
+    public void setCentre(BigDecimal x, BigDecimal y) {
+        this.ddCentreRe.set(x);
+        this.ddCentreIm.set(y);
+        this.centre.setReal(this.ddCentreRe.doubleValue());
+        this.centre.setImag(this.ddCentreIm.doubleValue());
+    }
+
+    /**
+     * Sets the centre from decimal strings, e.g. as typed by the user.
+     */
+    public void setCentre(String x, String y) {
+        setCentre(new BigDecimal(x.trim()), new BigDecimal(y.trim()));
+    }
+
+    /**
+     * Returns the real part of the centre as a decimal string, to the precision it is held.
+     */
+    public String getCentreRealString() {
+        return this.ddCentreRe.lo == 0 ? String.valueOf(this.ddCentreRe.hi) : this.ddCentreRe.toString();
+    }
+
+    /**
+     * Returns the imaginary part of the centre as a decimal string, to the precision it is held.
+     */
+    public String getCentreImagString() {
+        return this.ddCentreIm.lo == 0 ? String.valueOf(this.ddCentreIm.hi) : this.ddCentreIm.toString();
     }
 
     protected void setOrder(int order) {
@@ -204,9 +306,19 @@ public abstract class Fractal {
         return new Complex(real, imaginary);
     }
 
+    /**
+     * Builds the palette for the given number of base colours and of shading steps, unless the
+     * one already built is for the same colours, style and steps.
+     */
     public void setupColorMap(int numColors, int numSteps) {
 
-        this.colorMap = new Color[numColors][numSteps];
+        if (this.palette != null && this.paletteStyle == this.colorStyle && this.paletteNumColors == numColors
+                && this.paletteStride == numSteps + 1 && Arrays.equals(this.paletteColors, this.colors)) {
+            return;
+        }
+
+        int stride = numSteps + 1;
+        int[] palette = new int[numColors * stride];
         float[][] components = new float[numColors][3];
 
         for (int i = 0; i < numColors; i++) {
@@ -215,10 +327,16 @@ public abstract class Fractal {
 
         for (int j = 0; j < numColors; j++) {
 
+            if (this.colorStyle == ColorStyle.NO_SHADING || !isShaded(j)) {
+                Arrays.fill(palette, j * stride, (j + 1) * stride, this.colors[j].getRGB());
+                continue;
+            }
+
+            // Entry k is the colour after k iterations, shaded by step k - 1
             if (this.colorStyle == ColorStyle.RAINBOW) {
                 for (int k = 0; k < numSteps; k++) {
                     float hue = (float) ((k % 360.0) / 360.0 + 0.05); // 0.3595801134881463, 0.6153338949563218, 37876.75244106352
-                    this.colorMap[j][k] = Color.getHSBColor(hue, 1, 1);
+                    palette[j * stride + k + 1] = Color.HSBtoRGB(hue, 1, 1);
                 }
             }
 
@@ -228,7 +346,7 @@ public abstract class Fractal {
                     float red = (1 - f) * components[1][0] + f * components[0][0];
                     float green = (1 - f) * components[1][1] + (f * components[0][1]);
                     float blue = (1 - f) * components[1][2] + (f * components[0][2]);
-                    this.colorMap[j][k] = new Color(red, green, blue);
+                    palette[j * stride + k + 1] = packRGB(red, green, blue);
                 }
             }
             if (this.colorStyle == ColorStyle.THREECOLOUR){
@@ -237,10 +355,42 @@ public abstract class Fractal {
                     float red = ((1 - f) * components[j][0] + (f * components[numColors - 1][0]));
                     float green = ((1 - f) * components[j][1] + (f * components[numColors - 1][1]));
                     float blue = ((1 - f) * components[j][2] + (f * components[numColors - 1][2]));
-                    this.colorMap[j][k] = new Color(red, green, blue);
+                    palette[j * stride + k + 1] = packRGB(red, green, blue);
                 }
             }
+
+            // Pixels not yet iterated have no iterations
+            palette[j * stride] = palette[j * stride + 1];
         }
+
+        this.palette = palette;
+        this.paletteStride = stride;
+        this.paletteStyle = this.colorStyle;
+        this.paletteColors = this.colors.clone();
+        this.paletteNumColors = numColors;
+    }
+
+    /**
+     * Packs colour components between 0 and 1 into an opaque ARGB int, rounding as new Color(r, g, b) does.
+     */
+    static int packRGB(float red, float green, float blue) {
+        return 0xFF000000 | ((int) (red * 255 + 0.5) << 16) | ((int) (green * 255 + 0.5) << 8) | (int) (blue * 255 + 0.5);
+    }
+
+    /**
+     * Returns true if pixels with the given colour number are shaded by their iteration count,
+     * rather than all given the base colour. By default only points that escaped are shaded.
+     */
+    boolean isShaded(int colorNum) {
+        return colorNum != 0;
+    }
+
+    /**
+     * Returns true if the image is drawn upside down, i.e. row j of the results is drawn as
+     * row imageHeight - 1 - j of fractalImage.
+     */
+    boolean isImageFlipped() {
+        return false;
     }
 
     /**
@@ -253,6 +403,15 @@ public abstract class Fractal {
         this.dz = referenceHeight / ((this.imageHeight - 1) * this.zoomLevel);
         this.origin.setImag(this.centre.getImag() + (this.dz * (0.5 * this.imageHeight - 0.5)));
         this.origin.setReal(this.centre.getReal() - (this.dz * (0.5 * this.imageWidth - 0.5)));
+        this.ddOriginIm.set(this.ddCentreIm).add(this.dz * (0.5 * this.imageHeight - 0.5));
+        this.ddOriginRe.set(this.ddCentreRe).add(-(this.dz * (0.5 * this.imageWidth - 0.5)));
+
+        // Cycles are detected to well below the pixel size, so that exterior points near the boundary are not mistaken for interior ones
+        this.iterator.setCycleTolerance(Math.min(Iterator.TOL, 1.0e-3 * this.dz));
+
+        double scale = Math.max(Math.max(Math.abs(centre.getReal()), Math.abs(centre.getImag())), 1.0);
+        this.doubleDoubleActive = this.doubleDoubleEnabled && this.iterator.supportsDoubleDouble()
+                && this.dz < DOUBLE_DOUBLE_THRESHOLD * scale;
 
         fractalImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
         fractalPixels = ((DataBufferInt) fractalImage.getRaster().getDataBuffer()).getData();
@@ -260,6 +419,9 @@ public abstract class Fractal {
 
         iterationCounts = new int[imageWidth*imageHeight];
         pixelColorNums = new int[imageWidth*imageHeight]; // Rename pixelColorIDs?
+        pixelPeriods = new int[imageWidth*imageHeight];
+        iteratedCounts = new int[imageWidth*imageHeight];
+        pixelSupersampled = new boolean[imageWidth*imageHeight];
         pixelHues = new float[imageWidth*imageHeight];
         numPixelsPerIteration = new int[this.iterator.getMaxIterations()+1];
         System.out.println("Setup time: " + (System.currentTimeMillis()-t1));
@@ -274,7 +436,130 @@ public abstract class Fractal {
 
         long t0 = System.currentTimeMillis();
 
-        if (this.multithreadingEnabled) {
+        renderFractal();
+        if (isRenderCancelled()) {
+            System.out.println("Render cancelled after " + (System.currentTimeMillis()-t0));
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+        colorFractal();
+
+        long t2 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t1-t0) + ", colouring time: " + (t2-t1));
+        System.out.println("Create time: " + (t2-t0));
+
+    }
+
+    /**
+     * Zooms in by the given factor, or out if it is below 1, and generates the new fractalImage
+     * image from the current one, which should be complete and differ from the new frame only
+     * in zoom. The zoom is about the pixel just right of and below the middle of the image
+     * rather than the exact centre, so that new pixels in line with it lie on old ones where the
+     * factor allows (every k-th pixel for an integer factor k). The old frame is resampled at
+     * once into a preview, which is passed to the progress listener, and old pixels lying under
+     * new ones are reused rather than iterated again. Falls back to createFractal if the
+     * current frame cannot be reused.
+     */
+    public void zoomFractal(double factor) {
+
+        boolean reusable = frameReusable() && this.iterationCounts != null
+                && this.iterationCounts.length == imageWidth * imageHeight;
+        if (!reusable) {
+            setZoomLevel(this.zoomLevel * factor);
+            createFractal();
+            return;
+        }
+
+        int[] oldColorNums = pixelColorNums, oldIterationCounts = iterationCounts, oldPeriods = pixelPeriods;
+        int[] oldPixels = fractalPixels;
+        int anchorX = imageWidth / 2, anchorY = imageHeight / 2;
+        double oldDz = this.dz;
+
+        setZoomLevel(this.zoomLevel * factor);
+        double shift = oldDz - referenceHeight / ((this.imageHeight - 1) * this.zoomLevel);
+        setCentre(new BigDecimal(getCentreRealString()).add(new BigDecimal((anchorX - (0.5 * imageWidth - 0.5)) * shift)),
+                new BigDecimal(getCentreImagString()).subtract(new BigDecimal((anchorY - (0.5 * imageHeight - 0.5)) * shift)));
+
+        setupFractal();
+
+        long t0 = System.currentTimeMillis();
+
+        if (frameReusable()) {
+            this.zoomSeed = new ZoomSeed(oldColorNums, oldIterationCounts, oldPeriods, imageWidth, imageHeight,
+                    oldDz / this.dz, anchorX, anchorY, !this.supersamplingEnabled);
+            this.zoomSeed.preview(oldPixels, fractalPixels);
+            publishPreview();
+            System.out.println("Zoom preview time: " + (System.currentTimeMillis()-t0) + " (reusing " + this.zoomSeed.count() + " pixels)");
+        }
+
+        try {
+            renderFractal();
+        } finally {
+            this.zoomSeed = null;
+        }
+        if (isRenderCancelled()) {
+            System.out.println("Render cancelled after " + (System.currentTimeMillis()-t0));
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+        colorFractal();
+
+        long t2 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t1-t0) + ", colouring time: " + (t2-t1));
+        System.out.println("Zoom time: " + (t2-t0));
+
+    }
+
+    /**
+     * Returns true if the results of the current frame can be reused by zoomFractal. Fractals
+     * whose pixels do not simply sample the plane at their own points override this.
+     */
+    boolean frameReusable() {
+        return true;
+    }
+
+    /**
+     * Runs the given work on the calling thread as part of the frame for the given handle, so
+     * that the rendering methods it calls stop early once the handle is cancelled. The work is
+     * run even if the handle has already been cancelled, so any changes it makes to the view are
+     * not lost. The caller may run several pieces of work as one frame.
+     */
+    public void runFrame(RenderHandle handle, Runnable work) {
+        this.activeRender = handle;
+        try {
+            work.run();
+        } finally {
+            this.activeRender = null;
+        }
+    }
+
+    /**
+     * Returns true if the frame being rendered has been cancelled, in which case rendering
+     * methods return as soon as they can, leaving the image unfinished.
+     */
+    boolean isRenderCancelled() {
+        RenderHandle handle = this.activeRender;
+        return handle != null && handle.isCancelled();
+    }
+
+    /**
+     * Iterates every pixel of the image, filling iterationCounts and pixelColorNums.
+     */
+    protected void renderFractal() {
+        if (this.doubleDoubleActive) {
+            System.out.println("Using double-double precision (dz = " + this.dz + ")");
+        }
+        this.iteratedPixels = (long) imageWidth * imageHeight;
+        this.supersampledPixels = 0;
+        if (this.renderMode == RenderMode.SUBDIVISION) {
+            subdivisionRenderer.render();
+        } else if (this.renderMode == RenderMode.BOUNDARY_TRACING) {
+            boundaryTracer.render();
+        } else if (this.renderMode == RenderMode.PROGRESSIVE) {
+            progressiveRenderer.render();
+        } else if (this.multithreadingEnabled) {
             try {
                 fractalRenderer.render();
             } catch (InterruptedException e) {
@@ -284,96 +569,225 @@ public abstract class Fractal {
             renderRect(0, 0, imageWidth, imageHeight);
             //g2.drawImage(fractalImage,0,0, imageWidth, imageHeight, null);
         }
-        colorFractal();
-
-        long t1 = System.currentTimeMillis();
-        System.out.println("Create time: " + (t1-t0));
+        System.out.println("Iterated " + this.iteratedPixels + " of " + (imageWidth * imageHeight) + " pixels");
+    }
 
+    /**
+     * Moves the centre as translateFractal does, by dX pixels left and dY pixels up, without
+     * touching the image, for when the frame is to be rendered afresh anyway.
+     */
+    public void moveCentre(int dX, int dY) {
+        this.centre = this.centre.add(new Complex((-1) * dX * this.dz, dY * this.dz));
+        this.ddCentreRe.add((-1) * dX * this.dz);
+        this.ddCentreIm.add(dY * this.dz);
     }
 
+    /**
+     * Moves the image dX pixels right and dY pixels down, so that the view moves the opposite
+     * way. Pixels still in view are moved in place, a row at a time; only the strips of pixels
+     * uncovered are rendered, as tiles on the render pool, and coloured, so the cost is
+     * proportional to the area uncovered rather than to the image. Edges are found between the
+     * strips and the pixels kept beside them from the counts before supersampling, as they are
+     * within a frame, and kept pixels now on an edge are supersampled too.
+     */
     public void translateFractal(int dX, int dY) {
 
         long t1 = System.currentTimeMillis();
 
-        int[] tempIterationCounts = iterationCounts.clone();
-        int[] tempColorNums = pixelColorNums.clone();
-        int[] tempFractalPixles = fractalPixels.clone();
-
-        // TODO: change to transfer fractalPixels as well
-
         this.centre = this.centre.add(new Complex(-1 * dX * this.dz, dY * this.dz));
         this.origin = this.origin.add(new Complex((-1) * dX * this.dz, dY * this.dz));
+        this.ddCentreRe.add((-1) * dX * this.dz);
+        this.ddCentreIm.add(dY * this.dz);
+        this.ddOriginRe.add((-1) * dX * this.dz);
+        this.ddOriginIm.add(dY * this.dz);
+        this.supersampledPixels = 0;
+
+        if (Math.abs(dX) >= imageWidth || Math.abs(dY) >= imageHeight) {
+            // Nothing stays in view
+            Arrays.fill(numPixelsPerIteration, 0);
+            fractalRenderer.renderRegion(0, 0, imageWidth, imageHeight);
+            colorFractal();
+            System.out.println("Translate time: " + (System.currentTimeMillis()-t1));
+            return;
+        }
 
-        Complex complex;
-        int ourColor, numIter, xAltered, yAltered, pixelIndex, newPixelIndex;
-        int pixelResult[];
-
-        // TODO: fix this to allow for renderRect() usage.
-        /*for (int x = -dX; x < imageWidth-dX; x++) {
-            for (int y = -dY; y < imageHeight-dY; y++) {
-                pixelIndex = y * this.imageWidth + x;
-                newPixelIndex = (y + dY) * this.imageWidth + (x + dX);
-                try {
-                    iterationCounts[newPixelIndex] = tempIterationCounts[pixelIndex];
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    System.out.println(x + ", " + y + ", " + newPixelIndex);
-                }
-                iterationCounts[newPixelIndex] = tempIterationCounts[pixelIndex];
-                pixelColorNums[newPixelIndex] = tempColorNums[pixelIndex];
-                fractalPixels[newPixelIndex] = tempFractalPixles[pixelIndex];
-                pixelHues[newPixelIndex] = 0;
-            }
-        }*/
-
-        for (int x=0; x<imageWidth; x++) {
-            for (int y=0; y<imageHeight; y++) {
-
-                if ((x+dX<imageWidth) && (y+dY<imageHeight) && (x+dX>(-1)) && (y+dY>(-1))) {
-                    pixelIndex = y * this.imageWidth + x;
-                    newPixelIndex = (y + dY) * this.imageWidth + (x + dX);
-                    iterationCounts[newPixelIndex] = tempIterationCounts[pixelIndex];
-                    pixelColorNums[newPixelIndex] = tempColorNums[pixelIndex];
-                    fractalPixels[newPixelIndex] = tempFractalPixles[pixelIndex];
-                    pixelHues[newPixelIndex] = 0;
-                    continue;
+        // The pixels moved out of view no longer count towards the histogram
+        for (int[] rect : exposedRects(-dX, -dY)) {
+            for (int j = rect[1]; j < rect[1] + rect[3]; j++) {
+                for (int i = rect[0]; i < rect[0] + rect[2]; i++) {
+                    numPixelsPerIteration[iterationCounts[j*imageWidth + i]] --;
                 }
+            }
+        }
+
+        shiftPixels(iterationCounts, dX, dY);
+        shiftPixels(pixelColorNums, dX, dY);
+        shiftPixels(pixelPeriods, dX, dY);
+        shiftPixels(iteratedCounts, dX, dY);
+        shiftPixels(pixelSupersampled, dX, dY);
+        shiftPixels(fractalPixels, dX, isImageFlipped() ? -dY : dY);
+
+        // Both strips are iterated before either is finished, as edges are found across the corner between them
+        int[][] exposed = exposedRects(dX, dY);
+        for (int[] rect : exposed) {
+            if (rect[2] > 0 && rect[3] > 0) {
+                fractalRenderer.iterateRegion(rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+        for (int[] rect : exposed) {
+            if (rect[2] > 0 && rect[3] > 0) {
+                correctRegion(getRenderPool(), rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+        if (isRenderCancelled()) {
+            return;
+        }
+
+        // The strips are compared with the kept pixels as iterated, not as supersampled
+        for (int[] rect : exposed) {
+            for (int j = rect[1]; j < rect[1] + rect[3]; j++) {
+                System.arraycopy(iterationCounts, j*imageWidth + rect[0], iteratedCounts, j*imageWidth + rect[0], rect[2]);
+            }
+        }
+        for (int[] rect : exposed) {
+            if (rect[2] > 0 && rect[3] > 0) {
+                finishCorrected(getRenderPool(), iteratedCounts, rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+        int[][] rims = rimRects(dX, dY);
+        if (this.supersamplingEnabled) {
+            for (int[] rect : rims) {
+                supersampledPixels += finishRim(rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+        if (isRenderCancelled()) {
+            return;
+        }
+
+        long t2 = System.currentTimeMillis();
+        for (int[] rect : exposed) {
+            if (rect[2] > 0 && rect[3] > 0) {
+                colorRegion(rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+        for (int[] rect : rims) {
+            if (rect[2] > 0 && rect[3] > 0) {
+                colorRegion(rect[0], rect[1], rect[2], rect[3]);
+            }
+        }
+
+        long t3 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t2-t1) + ", colouring time: " + (t3-t2));
+        System.out.println("Translate time: " + (t3-t1));
 
-                /*
-                Alter x and y coordinates such that for each pixel that leaves the screen after translation we
-                render the corresponding 'new' pixel that enters on the opposite side of the image.
-                */
-                xAltered = imageWidth - (x+1);
-                yAltered = imageHeight - (y+1);
+    }
 
-                complex = pixelToComplex(xAltered, yAltered);
+    /**
+     * Returns the rectangles {x, y, width, height} of the pixels that nothing is moved onto when
+     * the image is moved dX pixels right and dY pixels down: a band of whole rows, and a band of
+     * columns beside the remaining rows. Either may be empty. Called with -dX and -dY, returns
+     * the pixels moved out of view instead.
+     */
+    private int[][] exposedRects(int dX, int dY) {
+        int rows = Math.abs(dY);
+        int rowsY = dY > 0 ? 0 : imageHeight - rows;
+        int colsX = dX > 0 ? 0 : imageWidth + dX;
+        int restY = dY > 0 ? rows : 0;
+        return new int[][]{{0, rowsY, imageWidth, rows}, {colsX, restY, Math.abs(dX), imageHeight - rows}};
+    }
 
-                pixelResult = this.iterator.iterate(complex); //TODO: change this stuff to a call of renderRect().
+    /**
+     * Returns the rectangles {x, y, width, height} of the pixels kept by translateFractal that
+     * border the strips it uncovers: the row beside the band of rows, and the column beside the
+     * band of columns. Either may be empty.
+     */
+    private int[][] rimRects(int dX, int dY) {
+        int rows = Math.abs(dY), cols = Math.abs(dX);
+        int restY = dY > 0 ? rows : 0;
+        int[] rimRow = rows > 0 ? new int[]{0, dY > 0 ? rows : imageHeight - rows - 1, imageWidth, 1} : new int[4];
+        int[] rimColumn = cols > 0 ? new int[]{dX > 0 ? cols : imageWidth - cols - 1, restY, 1, imageHeight - rows} : new int[4];
+        return new int[][]{rimRow, rimColumn};
+    }
 
-                numIter = pixelResult[1];
-                pixelIndex = yAltered*imageWidth+xAltered;
+    /**
+     * Supersamples the escaped pixels of a rectangle kept by translateFractal that were not
+     * supersampled before, but now lie on an edge, comparing counts as iterated as findEdges
+     * does, and moves them in the count of pixels per iteration.
+     *
+     * @return the number of pixels supersampled
+     */
+    private int finishRim(int x, int y, int width, int height) {
 
-                iterationCounts[pixelIndex] = numIter;
-                pixelColorNums[pixelIndex] = pixelResult[0];
-                pixelHues[pixelIndex] = 0;
-                numPixelsPerIteration[numIter] ++;
+        int threshold = this.supersampleThreshold;
+        int index, colorNum, count, supersampled = 0;
 
+        for (int j = y; j < y + height; j++) {
+            for (int i = x; i < x + width; i++) {
+                index = j*imageWidth + i;
+                colorNum = pixelColorNums[index];
+                if (colorNum <= 0 || pixelSupersampled[index]) {
+                    continue;
+                }
+                count = iteratedCounts[index];
+                if (isEdge(iteratedCounts, i, j, colorNum, count, threshold)) {
+                    numPixelsPerIteration[iterationCounts[index]] --;
+                    iterationCounts[index] = Iterator.resultIterations(supersamplePixel(i, j,
+                            Iterator.packResult(colorNum, count)));
+                    numPixelsPerIteration[iterationCounts[index]] ++;
+                    pixelSupersampled[index] = true;
+                    supersampled++;
+                }
             }
         }
+        return supersampled;
+    }
 
-        colorFractal();
-        System.out.println("Translate time: " + (System.currentTimeMillis()-t1));
-
+    /**
+     * Moves the contents of a per-pixel array dX pixels right and dY pixels down, in place, for
+     * translateFractal. Pixels nothing is moved onto keep their old values.
+     */
+    private void shiftPixels(Object pixels, int dX, int dY) {
+        int width = imageWidth - Math.abs(dX);
+        int rows = imageHeight - Math.abs(dY);
+        int fromX = Math.max(0, -dX);
+        int toX = Math.max(0, dX);
+        for (int k = 0; k < rows; k++) {
+            // Rows are copied starting from the side they move towards, so none is overwritten before it is moved
+            int y = dY > 0 ? rows - 1 - k : k - dY;
+            System.arraycopy(pixels, y*imageWidth + fromX, pixels, (y + dY)*imageWidth + toX, width);
+        }
     }
 
     /**
      * Colors all the pixels of the fractal image
      */
     public void colorFractal() {
-        colorRect(0, 0, imageWidth, imageHeight);
+        colorRegion(0, 0, imageWidth, imageHeight);
     }
 
     /**
-     * Colors a pixel in the image.
+     * Colors a sub rectangle of the fractal image as colorRect does, in bands of rows shared
+     * between the threads of the render pool.
+     */
+    void colorRegion(int x, int y, int width, int height) {
+        // Built before the bands start, so that they only read it
+        this.setupColorMap(this.getOrder() + 1, this.getMaxIterations());
+        runInBands(getRenderPool(), y, height, (bandY, bandHeight) -> colorRect(x, bandY, width, bandHeight));
+    }
+
+    /**
+     * Recolours the image after a change to the colours or colour style, from the iteration
+     * counts and colour numbers of the last frame, without iterating any pixel again.
+     */
+    public void recolor() {
+
+        long t1 = System.currentTimeMillis();
+        colorFractal();
+        System.out.println("Recolour time: " + (System.currentTimeMillis()-t1));
+    }
+
+    /**
+     * Colors a pixel in the image, from the palette last built by setupColorMap.
      *
      * @param pixelIndex The index of the pixel to be coloured in fractalPixels.
      * @param ourColor   An integer indicating a base colour in this.colors.
@@ -381,20 +795,7 @@ public abstract class Fractal {
      */
     public void colorPixel(int pixelIndex, int ourColor, int numIterations) {
 
-        if (this.colorStyle == ColorStyle.NO_SHADING)
-            fractalPixels[pixelIndex] = colors[ourColor].getRGB();
-        else {
-            if (ourColor == 0){
-                fractalPixels[pixelIndex] = colors[0].getRGB();
-            }else try {
-                Color color = colorMap[ourColor][numIterations - 1];
-                int col = color.getRGB();
-                fractalPixels[pixelIndex] = col;
-            } catch (NullPointerException e) {
-                System.out.println(fractalPixels[pixelIndex]);
-                System.out.println("Nullpointer in colorPixel! (x,y): " + pixelIndex + " ourColor: " + ourColor + " numiterations: " + numIterations);
-            }
-        }
+        fractalPixels[pixelIndex] = palette[ourColor * paletteStride + numIterations];
 
     }
 
@@ -431,9 +832,18 @@ public abstract class Fractal {
      * @param fileName  The filename to save the image as. Should end in .png.
      */
     void saveFractal(String fileName) {
+        saveImage(fractalImage, fileName);
+    }
+
+    /**
+     * Saves an image to a file, e.g. a frame published by a RenderCoordinator.
+     *
+     * @param fileName  The filename to save the image as. Should end in .png.
+     */
+    static void saveImage(BufferedImage image, String fileName) {
         try {
             File outputFile = new File(fileName);
-            ImageIO.write(fractalImage, "png", outputFile);
+            ImageIO.write(image, "png", outputFile);
         } catch (IOException e) {
             System.out.println("I got an error trying to save! Maybe you're out of space?");
         }
@@ -449,238 +859,640 @@ public abstract class Fractal {
      */
     public void renderRect(int x, int y, int width, int height) {
 
-        Complex complex;
-        int index;
-        int[] iterateData;
-
-        for (int i = x; i < x + width; i++) {
-            for (int j = y; j < y + height; j++) {
-
-                complex = pixelToComplex(i, j);
-                index = j*imageWidth+i;
-
-                if (this.supersamplingEnabled) {
-                    iterateData = supersamplePixel(i, j, this.iterator.iterate(complex));
-                } else {
-                    iterateData = this.iterator.iterate(complex);
-                }
+        iterateRect(x, y, width, height);
+        finishRect(x, y, width, height);
+    }
 
-                iterationCounts[index] = iterateData[1];
-                pixelColorNums[index] = iterateData[0];
-                pixelHues[index] = 0;
-                numPixelsPerIteration[iterateData[1]] ++;
+    /**
+     * Iterates a sub rectangle of the fractal image, filling pixelColorNums, iterationCounts and
+     * pixelPeriods only.
+     * @param x the x coordinate of the top left corner of the rectangle within the image
+     * @param y the y coordinate of the top left corner of the rectangle within the image
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    void iterateRect(int x, int y, int width, int height) {
 
+        for (int j = y; j < y + height; j++) {
+            if (isRenderCancelled()) {
+                return;
             }
+            iterateRowPixels(x, j, 1, width);
         }
     }
 
     /**
-     * Colors a sub rectangle of the fractal image.
-     * @param x the x coordinate of the top left corner of the rectangle within the image
-     * @param y the x coordinate of the top left corner of the rectangle within the image
-     * @param width the width of the rectangle
-     * @param height the height of the rectangle
+     * Iterates every step-th pixel of row y, starting from column x, filling pixelColorNums,
+     * iterationCounts and pixelPeriods at those pixels only.
+     * @param count the number of pixels to iterate
      */
-    public void colorRect(int x, int y, int width, int height) {
+    void iterateSamples(int x, int y, int step, int count) {
 
-        this.setupColorMap(this.getOrder() + 1, this.getMaxIterations());
-        int ourColor, numIter;
+        if (isRenderCancelled()) {
+            return;
+        }
+        iterateRowPixels(x, y, step, count);
+    }
+
+    /**
+     * Iterates count pixels of row y, every step-th from column x. While a zoomed frame is
+     * rendered from the previous one, pixels lying on old pixels take their results from
+     * zoomSeed instead. The pixels are then split into classes by column, each iterated as
+     * strided runs, so that the pixels left to iterate are not broken into runs too short for
+     * the vectorised kernels.
+     */
+    private void iterateRowPixels(int x, int y, int step, int count) {
 
-        for (int i=x; i < x+width; i++) {
-            for (int j = y; j < y+height; j++) {
+        ZoomSeed seed = this.zoomSeed;
+        if (seed == null || !seed.seedsRow(y)) {
+            iterateRun(x, y, step, count);
+            return;
+        }
 
-                numIter = iterationCounts[j*imageWidth+i];
-                ourColor = pixelColorNums[j*imageWidth+i];
-                if (numIter==0 && ourColor==0) {
-                    System.out.println("Black line at y: " + y + "; height: " + imageHeight);
-                }
-                try {
-                    colorPixel(i , j, ourColor, numIter);
-                }catch (ArrayIndexOutOfBoundsException e) {
-                    System.out.println(ourColor);
+        int period = seed.getColumnPeriod();
+        int classX, classStep = step * period, classCount, start, i;
+        for (int c = 0; c < Math.min(period, count); c++) {
+            classX = x + c * step;
+            classCount = (count - c + period - 1) / period;
+            if (!seed.seedsColumn(classX)) {
+                iterateRun(classX, y, classStep, classCount);
+                continue;
+            }
+            start = 0;
+            for (int k = 0; k < classCount; k++) {
+                i = classX + k * classStep;
+                if (seed.apply(i, y, y*imageWidth + i, pixelColorNums, iterationCounts, pixelPeriods)) {
+                    iterateRun(classX + start * classStep, y, classStep, k - start);
+                    start = k + 1;
                 }
             }
+            iterateRun(classX + start * classStep, y, classStep, classCount - start);
         }
-
     }
 
+    /**
+     * Scratch numbers for the double-double points of iterateRun and subsampleIterations, a pair
+     * per thread, so that no objects are created per row or per sample.
+     */
+    private static final ThreadLocal<DoubleDouble[]> DOUBLE_DOUBLE_SCRATCH =
+            ThreadLocal.withInitial(() -> new DoubleDouble[] {new DoubleDouble(), new DoubleDouble()});
 
-    protected int numThreads;
-    private boolean multithreadingEnabled = true;
-    private boolean supersamplingEnabled = true;
-    private MultithreadedRenderer fractalRenderer;
+    private void iterateRun(int x, int y, int step, int count) {
 
-    public void setNumThreads(int n) {
-        this.numThreads = n;
+        if (count == 0) {
+            return;
+        }
+        if (this.doubleDoubleActive) {
+            DoubleDouble rowIm = DOUBLE_DOUBLE_SCRATCH.get()[0].set(ddOriginIm).add(-y * dz);
+            if (step == 1) {
+                this.iterator.iterateRow(ddOriginRe, dz, rowIm, x, count, pixelColorNums, iterationCounts, pixelPeriods, y*imageWidth);
+            } else {
+                this.iterator.iterateRowSamples(ddOriginRe, dz, rowIm, x, step, count, pixelColorNums, iterationCounts, pixelPeriods, y*imageWidth);
+            }
+        } else if (step == 1) {
+            this.iterator.iterateRow(origin.getReal(), dz, origin.getImag() - y * dz, x, count,
+                    pixelColorNums, iterationCounts, pixelPeriods, y*imageWidth);
+        } else {
+            this.iterator.iterateRowSamples(origin.getReal(), dz, origin.getImag() - y * dz, x, step, count,
+                    pixelColorNums, iterationCounts, pixelPeriods, y*imageWidth);
+        }
     }
 
-    public int getNumThreads() {
-        if (!multithreadingEnabled) {
-            return 1;
-        }else {
-            return this.numThreads;
+    /**
+     * Completes a sub rectangle of the fractal image, on the calling thread, once it and the
+     * pixels around it have been iterated: supersamples the escaped pixels on edges if enabled,
+     * and counts the pixels per iteration. Only the corrections of correctRegion, if any, are
+     * shared between the threads of the render pool.
+     */
+    void finishRect(int x, int y, int width, int height) {
+
+        correctRegion(getRenderPool(), x, y, width, height);
+        if (isRenderCancelled()) {
+            return;
         }
-    }
 
-    public void toggleMultithreadingEnabled() {
-        this.multithreadingEnabled = !multithreadingEnabled;
+        boolean[] edges = this.supersamplingEnabled ? new boolean[width * height] : null;
+        if (edges != null) {
+            findEdges(edges, iterationCounts, x, y, width, y, height);
+        }
+        supersampledPixels += finishRows(edges, x, y, width, y, height);
     }
 
-    public boolean getMultithreadingEnabled() {
-        return this.multithreadingEnabled;
+    /**
+     * Corrects the iteration results of a rectangle of the image once it has been iterated and
+     * before it is finished, so that edges are found, and supersampled, between corrected pixels.
+     * The work may be shared between the threads of the given pool. Does nothing by default.
+     */
+    void correctRegion(ForkJoinPool pool, int x, int y, int width, int height) {
     }
 
-    public void toggleMultiSamplingEnabled() {
-        this.supersamplingEnabled = !supersamplingEnabled;
+    /**
+     * The number of rows handled by each task when a pass over a region, such as finishing or
+     * colouring, is split between the threads of the render pool.
+     */
+    static final int BAND_ROWS = 16;
+
+    /**
+     * Runs the given work over rows y to y + height - 1 of the image in bands of BAND_ROWS rows,
+     * as tasks in the given pool, and waits for it. The work is passed the first row of its band
+     * and the number of rows in it.
+     */
+    void runInBands(ForkJoinPool pool, int y, int height, BiConsumer<Integer, Integer> work) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[(height + BAND_ROWS - 1) / BAND_ROWS];
+        for (int k = 0; k < tasks.length; k++) {
+            final int bandY = y + k * BAND_ROWS;
+            tasks[k] = ForkJoinTask.adapt(() -> work.accept(bandY, Math.min(BAND_ROWS, y + height - bandY)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
     }
 
-    public boolean getSupersamplingEnabled() {
-        return this.supersamplingEnabled;
+    /**
+     * Does the work of finishRect over the whole image, in bands of BAND_ROWS rows, as tasks
+     * in the given pool.
+     */
+    void finishInParallel(ForkJoinPool pool) {
+        finishRegion(pool, 0, 0, imageWidth, imageHeight);
     }
 
-    int[] supersamplePixel(int x, int y, int[] iterateData){
+    /**
+     * Does the work of finishRect over a rectangle of the image, in bands of BAND_ROWS rows,
+     * as tasks in the given pool. Edges are found in every band before any is supersampled, so
+     * that each pixel is compared with its neighbours as iterated rather than as supersampled.
+     */
+    void finishRegion(ForkJoinPool pool, int x, int y, int width, int height) {
 
-        if (iterateData[0] == 0) {
-            return iterateData;
+        correctRegion(pool, x, y, width, height);
+        if (isRenderCancelled()) {
+            return;
         }
+        finishCorrected(pool, iterationCounts, x, y, width, height);
+    }
 
-        int subPixelIterationTotal;
-        Complex[] samples = new Complex[4];
-        Complex c;
-        double spd = dz * 0.25; // Sub-pixel distance
-        int[] result = new int[2];
+    /**
+     * Does the work of finishRegion once the rectangle has been corrected, finding edges from
+     * the given counts, which are those of iterationCounts unless the pixels around the
+     * rectangle have been supersampled already.
+     */
+    private void finishCorrected(ForkJoinPool pool, int[] counts, int x, int y, int width, int height) {
 
-        subPixelIterationTotal = iterateData[1]; //was Copy
+        long t1 = System.currentTimeMillis();
+        boolean[] edges = this.supersamplingEnabled ? new boolean[width * height] : null;
+
+        if (edges != null) {
+            runInBands(pool, y, height, (bandY, bandHeight) -> findEdges(edges, counts, x, y, width, bandY, bandHeight));
+        }
 
-        c = pixelToComplex(x, y);
-        samples[0] = c.add(new Complex(-spd, spd));
-        samples[1] = c.add(new Complex(spd, spd));
-        samples[2] = c.add(new Complex(-spd, -spd));
-        samples[3] = c.add(new Complex(spd, -spd));
+        AtomicLong supersampled = new AtomicLong();
+        runInBands(pool, y, height, (bandY, bandHeight) -> supersampled.addAndGet(finishRows(edges, x, y, width, bandY, bandHeight)));
 
-        for (int k = 0; k < 4; k++) {
-            subPixelIterationTotal += iterator.iterate(samples[k])[1];
+        if (edges != null) {
+            supersampledPixels += supersampled.get();
+            System.out.println("Supersampled " + supersampled + " of " + (width * height) + " pixels in "
+                    + (System.currentTimeMillis()-t1) + " ms");
         }
+    }
+
+    /**
+     * Marks, in the given array, the escaped pixels of rows bandY to bandY + bandHeight - 1 of
+     * a region that lie on an edge: those with a neighbour that has a different colour number,
+     * or an iteration count differing by more than the supersampling threshold. Neighbours
+     * outside the region are compared too, as long as they are in the image.
+     *
+     * @param edges  One entry per pixel of the region, row by row
+     * @param counts  The iteration counts compared, per pixel of the image
+     */
+    private void findEdges(boolean[] edges, int[] counts, int x, int y, int width, int bandY, int bandHeight) {
 
-        result[0] = iterateData[0];
-        result[1] = Math.round((float) subPixelIterationTotal / 5f);
+        int threshold = this.supersampleThreshold;
+        int index, colorNum, count;
 
-        return result;
+        for (int j = bandY; j < bandY + bandHeight; j++) {
+            if (isRenderCancelled()) {
+                return;
+            }
+            for (int i = x; i < x + width; i++) {
+                index = j*imageWidth + i;
+                colorNum = pixelColorNums[index];
+                if (colorNum <= 0) {
+                    continue;
+                }
+                edges[(j - y)*width + i - x] = isEdge(counts, i, j, colorNum, counts[index], threshold);
+            }
+        }
     }
 
-    void supersampleTest(){
+    private boolean isEdge(int[] counts, int i, int j, int colorNum, int count, int threshold) {
+        int index = j*imageWidth + i;
+        return threshold < 0
+                || (i > 0 && differs(counts, index - 1, colorNum, count, threshold))
+                || (i < imageWidth - 1 && differs(counts, index + 1, colorNum, count, threshold))
+                || (j > 0 && differs(counts, index - imageWidth, colorNum, count, threshold))
+                || (j < imageHeight - 1 && differs(counts, index + imageWidth, colorNum, count, threshold));
+    }
 
-        long t0 = System.currentTimeMillis();
-        long iterateTime = 0;
+    private boolean differs(int[] counts, int index, int colorNum, int count, int threshold) {
+        return pixelColorNums[index] != colorNum || Math.abs(counts[index] - count) > threshold;
+    }
 
-        int[] iterationCountsCopy = iterationCounts.clone();
-        int[][] neighbourPixelInfo = new int[4][2];
-        int subPixelIterationTotal, neighbourPixelIterationTotal;
-        Complex[] samples = new Complex[4];
-        Complex c;
-        double spd = dz * 0.25; // Sub-pixel distance
-        int changedPixels = 0; // Count number of pixels altered by this process
+    /**
+     * Supersamples the pixels marked by findEdges in rows bandY to bandY + bandHeight - 1 of a
+     * region, and counts the pixels per iteration.
+     *
+     * @param edges  As filled by findEdges, or null if supersampling is disabled
+     * @return the number of pixels supersampled
+     */
+    private int finishRows(boolean[] edges, int x, int y, int width, int bandY, int bandHeight) {
 
-        for (int i = 1; i < imageWidth-1; i++) {
-            for (int j = 1; j < imageHeight-1; j++) {
+        int index, supersampled = 0;
 
-                if (i ==1 || j ==1 || i == (imageWidth-1) || j == (imageWidth-1)) {
-                    continue;
-                }
+        for (int j = bandY; j < bandY + bandHeight; j++) {
+            if (isRenderCancelled()) {
+                return supersampled;
+            }
+            for (int i = x; i < x + width; i++) {
 
-                neighbourPixelInfo[0][0] = pixelColorNums[(j-1)*imageWidth + i];
-                neighbourPixelInfo[1][0] = pixelColorNums[j*imageWidth + (i-1)];
-                neighbourPixelInfo[2][0] = pixelColorNums[j*imageWidth + (i+1)];
-                neighbourPixelInfo[3][0] = pixelColorNums[(j+1)*imageWidth + i];
+                index = j*imageWidth + i;
+                iteratedCounts[index] = iterationCounts[index];
+                pixelSupersampled[index] = edges != null && edges[(j - y)*width + i - x];
 
-                // If pixel is surrounded on all 4 sides by pixels all of color ID 0 (e.g. indicating in MandelBrot set)
-                // we do nothing, since this pixel should definitely be a solid color
-                if (neighbourPixelInfo[0][0] == 0
-                        && neighbourPixelInfo[0][0] == neighbourPixelInfo[1][0]
-                        && neighbourPixelInfo[1][0] == neighbourPixelInfo[2][0]
-                        && neighbourPixelInfo[2][0] == neighbourPixelInfo[3][0]){
-                    continue;
+                if (pixelSupersampled[index]) {
+                    iterationCounts[index] = Iterator.resultIterations(supersamplePixel(i, j,
+                            Iterator.packResult(pixelColorNums[index], iterationCounts[index])));
+                    supersampled++;
                 }
 
-                neighbourPixelInfo[0][1] = iterationCountsCopy[(j-1)*imageWidth + i];
-                neighbourPixelInfo[1][1] = iterationCountsCopy[j*imageWidth + (i-1)];
-                neighbourPixelInfo[2][1] = iterationCountsCopy[j*imageWidth + (i+1)];
-                neighbourPixelInfo[3][1] = iterationCountsCopy[(j+1)*imageWidth + i];
+                pixelHues[index] = 0;
+                numPixelsPerIteration[iterationCounts[index]] ++;
 
-                neighbourPixelIterationTotal = 0;
+            }
+        }
+        return supersampled;
+    }
 
-                for (int k = 0; k < 4; k++) {
-                    neighbourPixelIterationTotal += neighbourPixelInfo[k][1];
-                }
+    /**
+     * Returns true if the pixels at the two indices have the same colour number, iteration count
+     * and period, so that one could stand in for the other.
+     */
+    boolean sameResult(int a, int b) {
+        return pixelColorNums[a] == pixelColorNums[b] && iterationCounts[a] == iterationCounts[b]
+                && pixelPeriods[a] == pixelPeriods[b];
+    }
 
-                // Check local variance in iteration counts & current pixel (i.e. comparing color shades);
-                // if local variance is below threshold the following process would make little difference,
-                // so we move on to the next pixel.
-                if ((float)(Math.abs(neighbourPixelIterationTotal - 4 * iterationCountsCopy[j*imageWidth+i])) < 0.1f * (float)iterationCountsCopy[j*imageWidth+i]) {
-                    continue;
+    /**
+     * Colors a sub rectangle of the fractal image.
+     * @param x the x coordinate of the top left corner of the rectangle within the image
+     * @param y the x coordinate of the top left corner of the rectangle within the image
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     */
+    public void colorRect(int x, int y, int width, int height) {
+
+        this.setupColorMap(this.getOrder() + 1, this.getMaxIterations());
+        int[] palette = this.palette;
+        int stride = this.paletteStride;
+        boolean flipped = isImageFlipped();
+        int row, outRow, ourColor;
+
+        for (int j = y; j < y + height; j++) {
+            row = j*imageWidth;
+            outRow = (flipped ? imageHeight - 1 - j : j)*imageWidth;
+            for (int i = x; i < x + width; i++) {
+                ourColor = pixelColorNums[row + i];
+                // Glitched pixels of a preview are skipped, and corrected once every pixel is iterated
+                if (ourColor >= 0) {
+                    fractalPixels[outRow + i] = palette[ourColor*stride + iterationCounts[row + i]];
                 }
+            }
+        }
+
+    }
+
+
+    protected int numThreads;
+    private boolean multithreadingEnabled = true;
+    private boolean supersamplingEnabled = true;
+
+    /**
+     * Escaped pixels are supersampled only where a neighbour's iteration count differs by more
+     * than supersampleThreshold, or its colour number differs; a negative threshold supersamples
+     * every escaped pixel.
+     */
+    private int supersampleThreshold = 1;
+    private SupersampleGrid supersampleGrid = SupersampleGrid.GRID_2X2;
+    private RenderMode renderMode = RenderMode.STANDARD;
+    private MultithreadedRenderer fractalRenderer;
+    private SubdivisionRenderer subdivisionRenderer;
+    private BoundaryTracer boundaryTracer;
+    private ProgressiveRenderer progressiveRenderer;
+
+    /**
+     * Called with fractalImage each time a preview of the frame being rendered is ready, on the
+     * thread doing the rendering.
+     */
+    private Consumer<BufferedImage> progressListener;
+
+    /**
+     * The side length in pixels of the square tiles handed out by the multithreaded renderer,
+     * and the order in which they are handed out.
+     */
+    private int tileSize = 64;
+    private TileOrder tileOrder = TileOrder.ROWS;
+
+    /**
+     * The pool shared by the renderers of every fractal. It is kept between frames and only
+     * replaced when a different number of threads is asked for.
+     */
+    private static ForkJoinPool renderPool;
+
+    /**
+     * The frame being rendered by runFrame, if any.
+     */
+    private volatile RenderHandle activeRender;
+
+    /**
+     * The previous frame, while zoomFractal renders the next one from it; null otherwise.
+     */
+    private ZoomSeed zoomSeed;
+
+    public void setNumThreads(int n) {
+        this.numThreads = n;
+    }
 
-                subPixelIterationTotal = iterationCountsCopy[j*imageWidth+i];
+    public int getNumThreads() {
+        if (!multithreadingEnabled) {
+            return 1;
+        }else {
+            return this.numThreads;
+        }
+    }
 
-                c = pixelToComplex(i, j);
-                samples[0] = c.add(new Complex(-spd, spd));
-                samples[1] = c.add(new Complex(spd, spd));
-                samples[2] = c.add(new Complex(-spd, -spd));
-                samples[3] = c.add(new Complex(spd, -spd));
+    public void setTileSize(int tileSize) {
+        this.tileSize = Math.max(1, tileSize);
+    }
 
-                long t1 = System.currentTimeMillis();
+    public int getTileSize() {
+        return this.tileSize;
+    }
 
-                for (int k = 0; k < 4; k++) {
-                    subPixelIterationTotal += iterator.iterate(samples[k])[1];
+    public void setTileOrder(TileOrder tileOrder) {
+        this.tileOrder = tileOrder;
+    }
+
+    public TileOrder getTileOrder() {
+        return this.tileOrder;
+    }
+
+    /**
+     * Returns the shared render pool, with as many threads as getNumThreads.
+     */
+    ForkJoinPool getRenderPool() {
+        int n = getNumThreads();
+        synchronized (Fractal.class) {
+            if (renderPool == null || renderPool.getParallelism() != n) {
+                if (renderPool != null) {
+                    renderPool.shutdown();
                 }
+                renderPool = new ForkJoinPool(n);
+            }
+            return renderPool;
+        }
+    }
+
+    public void toggleMultithreadingEnabled() {
+        this.multithreadingEnabled = !multithreadingEnabled;
+    }
+
+    public boolean getMultithreadingEnabled() {
+        return this.multithreadingEnabled;
+    }
+
+    public void toggleMultiSamplingEnabled() {
+        this.supersamplingEnabled = !supersamplingEnabled;
+    }
+
+    public boolean getSupersamplingEnabled() {
+        return this.supersamplingEnabled;
+    }
+
+    public void setSupersampleThreshold(int threshold) {
+        this.supersampleThreshold = threshold;
+    }
+
+    public int getSupersampleThreshold() {
+        return this.supersampleThreshold;
+    }
 
-                iterateTime += (System.currentTimeMillis()-t1);
+    public void setSupersampleGrid(SupersampleGrid grid) {
+        this.supersampleGrid = grid;
+    }
+
+    public SupersampleGrid getSupersampleGrid() {
+        return this.supersampleGrid;
+    }
+
+    public long getSupersampledPixels() {
+        return this.supersampledPixels;
+    }
+
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+    }
+
+    public RenderMode getRenderMode() {
+        return this.renderMode;
+    }
+
+    public long getIteratedPixels() {
+        return this.iteratedPixels;
+    }
+
+    public void setProgressListener(Consumer<BufferedImage> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Passes fractalImage, as it stands, to the progress listener if there is one.
+     */
+    void publishPreview() {
+        if (this.progressListener != null) {
+            this.progressListener.accept(fractalImage);
+        }
+    }
+
+    public void toggleDoubleDoubleEnabled() {
+        this.doubleDoubleEnabled = !doubleDoubleEnabled;
+    }
+
+    public boolean getDoubleDoubleEnabled() {
+        return this.doubleDoubleEnabled;
+    }
+
+    public void toggleVectorisationEnabled() {
+        this.iterator.setVectorisationEnabled(!this.iterator.getVectorisationEnabled());
+    }
 
-                iterationCounts[j*imageWidth+i] = Math.round((float) subPixelIterationTotal / 5f);
-                changedPixels ++;
+    public boolean getVectorisationEnabled() {
+        return this.iterator.getVectorisationEnabled();
+    }
+
+    /**
+     * Returns true if a region whose border consists of pixels with the given colour number may
+     * be filled by the subdivision renderer or boundary tracer without iterating its inside. By default only regions
+     * of points that did not escape are filled: the set is connected, so a border lying inside it
+     * encloses only points of the set. A border in a single escape band gives no such guarantee,
+     * as the band closes around the whole set.
+     */
+    boolean canFillRegion(int colorNum) {
+        return colorNum == 0;
+    }
 
+    /**
+     * Returns the result of an escaped pixel averaged over the samples of the supersampling
+     * grid and the pixel itself. Points in the set are returned unchanged.
+     */
+    long supersamplePixel(int i, int j, long iterateData){
+
+        if (Iterator.resultColorNum(iterateData) == 0) {
+            return iterateData;
+        }
+
+        SupersampleGrid grid = this.supersampleGrid;
+        int size = grid.getSize();
+        int subPixelIterationTotal = Iterator.resultIterations(iterateData);
+        int samples = 1, k;
+        double offsetRe, offsetIm;
+
+        for (int b = 0; b < size; b++) {
+            for (int a = 0; a < size; a++) {
+                k = 2 * (b * size + a);
+                offsetRe = grid.offset(a, i, j, k) * dz;
+                offsetIm = -grid.offset(b, i, j, k + 1) * dz;
+                // The middle of an odd grid is the pixel itself
+                if (offsetRe == 0 && offsetIm == 0) {
+                    continue;
+                }
+                subPixelIterationTotal += subsampleIterations(i, j, offsetRe, offsetIm, iterateData);
+                samples++;
             }
         }
 
-        colorFractal();
-        iterationCounts = iterationCountsCopy.clone();
-        System.out.println("AA time: " + (System.currentTimeMillis()-t0));
-        System.out.println("AA iterate time: " + iterateTime);
-        System.out.println("Changed pixels: " + changedPixels);
+        return Iterator.packResult(Iterator.resultColorNum(iterateData), Math.round((float) subPixelIterationTotal / samples));
+    }
 
+    /**
+     * Returns the iteration count of the sub-pixel sample at the given offset from pixel (i, j),
+     * or that of the pixel itself if the sample could not be classified (e.g. a glitched
+     * perturbation result).
+     */
+    private int subsampleIterations(int i, int j, double offsetRe, double offsetIm, long pixelData) {
+        long sample;
+        if (this.doubleDoubleActive) {
+            DoubleDouble[] scratch = DOUBLE_DOUBLE_SCRATCH.get();
+            sample = iterator.iterate(scratch[0].set(ddOriginRe).add(i * dz).add(offsetRe),
+                    scratch[1].set(ddOriginIm).add(-j * dz).add(offsetIm));
+        } else {
+            sample = iterator.iterate(origin.getReal() + i * dz + offsetRe, origin.getImag() - j * dz + offsetIm);
+        }
+        return Iterator.resultColorNum(sample) < 0 ? Iterator.resultIterations(pixelData) : Iterator.resultIterations(sample);
     }
 
     public class MultithreadedRenderer {
 
         /*
         Array of ints describing how to split the rendering process into smaller tasks
-        In the regular case we split the image vertically into numThreads rectangles,
-        the section borders correspond to the y coordinates of the dividing lines
+        Subclasses that sample points rather than pixels split the work into numThreads sections,
+        the section borders correspond to the first index of each section
          */
         int[] sectionBorders;
 
+        /*
+        The image itself is split into tiles of tileSize x tileSize pixels, numbered row by row,
+        and tiles holds the tile numbers in the order they should be rendered. The list is divided
+        recursively between the threads of the render pool, so a thread that finishes its share
+        early (for instance outside the set) steals tiles from the others.
+         */
+        int[] tiles;
+        int tilesAcross;
+
+        int regionX, regionY, regionRight, regionBottom;
+
         public void render() throws InterruptedException {
-            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") with " + numThreads + " threads...");
+            int size = getTileSize();
+            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") with " + numThreads + " threads in "
+                    + ((imageWidth + size - 1) / size) * ((imageHeight + size - 1) / size) + " tiles...");
 
-            sectionBorders = new int[numThreads+1];
-            sectionBorders[0] = 0;
-            sectionBorders[numThreads] = imageHeight;
-            for (int i = 1; i < numThreads; i++) {
-                sectionBorders[i] = i*(imageHeight/numThreads);
-            }
+            renderRegion(0, 0, imageWidth, imageHeight);
+        }
 
-            ExecutorService renderPool = Executors.newFixedThreadPool(numThreads);
+        /**
+         * Renders a rectangle of the image, split into tiles which are shared between the threads
+         * of the render pool.
+         */
+        public void renderRegion(int x, int y, int width, int height) {
+            iterateRegion(x, y, width, height);
+            finishRegion(getRenderPool(), x, y, width, height);
+        }
+
+        /**
+         * Iterates a rectangle of the image as renderRegion does, without finishing it.
+         */
+        public void iterateRegion(int x, int y, int width, int height) {
+            int size = getTileSize();
+            regionX = x;
+            regionY = y;
+            regionRight = x + width;
+            regionBottom = y + height;
+            tilesAcross = (width + size - 1) / size;
+            int tilesDown = (height + size - 1) / size;
+            tiles = orderTiles(tilesAcross, tilesDown);
+
+            getRenderPool().invoke(new TileTask(0, tiles.length, size));
+        }
 
-            for(int i=0; i<numThreads; i++) {
-                renderPool.execute(createRenderThread(i));
+        /**
+         * Returns the numbers of the tiles in a tilesAcross x tilesDown grid, in the order given by
+         * getTileOrder.
+         */
+        int[] orderTiles(int tilesAcross, int tilesDown) {
+            int[] order = new int[tilesAcross * tilesDown];
+            for (int t = 0; t < order.length; t++) {
+                order[t] = t;
+            }
+            if (getTileOrder() == TileOrder.CENTRE_OUT) {
+                double cx = 0.5 * (tilesAcross - 1), cy = 0.5 * (tilesDown - 1);
+                order = Arrays.stream(order).boxed()
+                        .sorted(Comparator.comparingDouble(t -> Math.hypot(t % tilesAcross - cx, t / tilesAcross - cy)))
+                        .mapToInt(Integer::intValue).toArray();
             }
+            return order;
+        }
+
+        /**
+         * Iterates the tiles at positions start to end - 1 of the tiles array.
+         */
+        private class TileTask extends RecursiveAction {
 
-            renderPool.shutdown();
+            private final int start, end, size;
 
-            try {
-                renderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            TileTask(int start, int end, int size) {
+                this.start = start;
+                this.end = end;
+                this.size = size;
+            }
+
+            @Override
+            protected void compute() {
+                if (isRenderCancelled()) {
+                    return;
+                }
+                if (end - start > 1) {
+                    int middle = (start + end) >>> 1;
+                    invokeAll(new TileTask(start, middle, size), new TileTask(middle, end, size));
+                    return;
+                }
+                int x = regionX + (tiles[start] % tilesAcross) * size;
+                int y = regionY + (tiles[start] / tilesAcross) * size;
+                iterateRect(x, y, Math.min(size, regionRight - x), Math.min(size, regionBottom - y));
             }
         }
 
@@ -701,4 +1513,393 @@ public abstract class Fractal {
 
     }
 
+
+    /**
+     * Renders the image in passes of decreasing coarseness. The first pass iterates every
+     * FIRST_STEP-th pixel of every FIRST_STEP-th row, and fills the square block of pixels
+     * below and to the right of each sample with its result, so that a preview can be shown
+     * almost at once. Each later pass halves the spacing, iterating only the pixels not sampled
+     * before. After every pass but the last the image is coloured and passed to the progress
+     * listener; after the last, every pixel has been iterated exactly as by renderRect.
+     */
+    public class ProgressiveRenderer {
+
+        /**
+         * The spacing of the samples in the first pass. Must be a power of two.
+         */
+        static final int FIRST_STEP = 8;
+
+        public void render() {
+            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") progressively with " + getNumThreads() + " threads...");
+            long t1 = System.currentTimeMillis();
+            ForkJoinPool pool = getRenderPool();
+
+            for (int step = FIRST_STEP; step >= 1 && !isRenderCancelled(); step /= 2) {
+                final int s = step;
+                ForkJoinTask<?>[] passTasks = new ForkJoinTask<?>[(imageHeight + s - 1) / s];
+                for (int k = 0; k < passTasks.length; k++) {
+                    final int y = k * s;
+                    passTasks[k] = ForkJoinTask.adapt(() -> renderPassRow(y, s));
+                }
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(passTasks)));
+
+                // A zoom preview is already better than the coarse passes
+                if (s > 1 && !isRenderCancelled() && zoomSeed == null) {
+                    colorFractal();
+                    publishPreview();
+                    System.out.println("Pass " + s + " time: " + (System.currentTimeMillis()-t1));
+                }
+            }
+
+            finishInParallel(pool);
+            System.out.println("Progressive time: " + (System.currentTimeMillis()-t1));
+        }
+
+        /**
+         * Iterates the pixels of row y that are first sampled in the pass with the given step,
+         * and fills their blocks. In rows sampled by the previous pass, every other sample is
+         * already known.
+         */
+        private void renderPassRow(int y, int step) {
+            boolean sampledBefore = step < FIRST_STEP && y % (2 * step) == 0;
+            int first = sampledBefore ? step : 0;
+            int stride = sampledBefore ? 2 * step : step;
+
+            iterateSamples(first, y, stride, (imageWidth - first + stride - 1) / stride);
+            if (step == 1) {
+                return;
+            }
+
+            int index, end, width;
+            for (int x = first; x < imageWidth; x += stride) {
+                index = y*imageWidth + x;
+                width = Math.min(step, imageWidth - x);
+                for (int j = y; j < Math.min(y + step, imageHeight); j++) {
+                    end = j*imageWidth + x + width;
+                    Arrays.fill(pixelColorNums, j*imageWidth + x, end, pixelColorNums[index]);
+                    Arrays.fill(iterationCounts, j*imageWidth + x, end, iterationCounts[index]);
+                    Arrays.fill(pixelPeriods, j*imageWidth + x, end, pixelPeriods[index]);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Renders the image by Mariani-Silver subdivision. Only the border of a rectangle is iterated;
+     * if every border pixel has the same colour number, iteration count and period, the inside is
+     * filled with that result without being iterated. Otherwise the rectangle is split in two
+     * across its longer side, the dividing line is iterated, and both halves are handled the same
+     * way as fork-join tasks. Large regions inside the set, or Newton basins, then cost only
+     * their outline. Which regions may be filled is decided by canFillRegion.
+     */
+    public class SubdivisionRenderer {
+
+        /**
+         * Rectangles with a side of at most this many pixels are iterated in full.
+         */
+        static final int MIN_SIZE = 16;
+
+        private final AtomicLong filledPixels = new AtomicLong();
+
+        public void render() {
+            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") by subdivision with " + getNumThreads() + " threads...");
+            long t1 = System.currentTimeMillis();
+
+            filledPixels.set(0);
+            ForkJoinPool pool = getRenderPool();
+
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                iterateRect(0, 0, imageWidth, 1);
+                iterateRect(0, imageHeight - 1, imageWidth, 1);
+                iterateColumn(0, 1, imageHeight - 2);
+                iterateColumn(imageWidth - 1, 1, imageHeight - 2);
+                new RectangleTask(0, 0, imageWidth, imageHeight).invoke();
+            }));
+
+            finishInParallel(pool);
+
+            iteratedPixels = (long) imageWidth * imageHeight - filledPixels.get();
+            System.out.println("Subdivision time: " + (System.currentTimeMillis()-t1));
+        }
+
+        private void iterateColumn(int x, int y, int height) {
+            for (int j = y; j < y + height; j++) {
+                iterateRect(x, j, 1, 1);
+            }
+        }
+
+        /**
+         * Returns true if every pixel on the border of the rectangle has the same result.
+         */
+        private boolean borderIsUniform(int x, int y, int width, int height) {
+            int first = y*imageWidth + x;
+            int top = first, bottom = (y + height - 1)*imageWidth + x;
+
+            for (int i = 0; i < width; i++) {
+                if (!sameResult(first, top + i) || !sameResult(first, bottom + i)) {
+                    return false;
+                }
+            }
+            for (int j = y + 1; j < y + height - 1; j++) {
+                if (!sameResult(first, j*imageWidth + x) || !sameResult(first, j*imageWidth + x + width - 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * A rectangle of the image whose border has already been iterated.
+         */
+        private class RectangleTask extends RecursiveAction {
+
+            private final int x, y, width, height;
+
+            RectangleTask(int x, int y, int width, int height) {
+                this.x = x;
+                this.y = y;
+                this.width = width;
+                this.height = height;
+            }
+
+            @Override
+            protected void compute() {
+
+                if (width <= 2 || height <= 2 || isRenderCancelled()) {
+                    return;
+                }
+
+                if (width <= MIN_SIZE || height <= MIN_SIZE) {
+                    iterateRect(x + 1, y + 1, width - 2, height - 2);
+                    return;
+                }
+
+                if (canFillRegion(pixelColorNums[y*imageWidth + x]) && borderIsUniform(x, y, width, height)) {
+                    int first = y*imageWidth + x;
+                    for (int j = y + 1; j < y + height - 1; j++) {
+                        Arrays.fill(pixelColorNums, j*imageWidth + x + 1, j*imageWidth + x + width - 1, pixelColorNums[first]);
+                        Arrays.fill(iterationCounts, j*imageWidth + x + 1, j*imageWidth + x + width - 1, iterationCounts[first]);
+                        Arrays.fill(pixelPeriods, j*imageWidth + x + 1, j*imageWidth + x + width - 1, pixelPeriods[first]);
+                    }
+                    filledPixels.addAndGet((long) (width - 2) * (height - 2));
+                    return;
+                }
+
+                int middle;
+                if (width >= height) {
+                    middle = x + width / 2;
+                    iterateColumn(middle, y + 1, height - 2);
+                    invokeAll(new RectangleTask(x, y, middle - x + 1, height),
+                            new RectangleTask(middle, y, x + width - middle, height));
+                } else {
+                    middle = y + height / 2;
+                    iterateRect(x + 1, middle, width - 2, 1);
+                    invokeAll(new RectangleTask(x, y, width, middle - y + 1),
+                            new RectangleTask(x, middle, width, y + height - middle));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Renders the image by boundary tracing. Pixels are taken from a queue, seeded with the edges
+     * of the image; each is iterated along with its four neighbours, and any neighbour with a
+     * different result is queued in turn. Iteration therefore follows the edges between regions
+     * and never reaches their inside. The pixels left over form regions enclosed by iterated
+     * pixels: a region is flood-filled if its enclosing pixels all have the same result and
+     * canFillRegion allows it, and otherwise its rim is queued and tracing continues from there.
+     *
+     * Tracing runs on the calling thread; supersampling afterwards is shared between threads.
+     */
+    public class BoundaryTracer {
+
+        private static final byte ITERATED = 1, FILLED = 2, QUEUED = 4, VISITED = 8;
+
+        private byte[] state;
+
+        /**
+         * Each pixel is queued at most once, so the queue never wraps.
+         */
+        private int[] queue;
+        private int queueHead, queueTail;
+
+        /**
+         * The pixels of the region being flood-filled.
+         */
+        private int[] region;
+        private int regionSize, regionBorder;
+        private boolean regionUniform;
+
+        private long iterated, filled;
+
+        public void render() {
+            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") by boundary tracing...");
+            long t1 = System.currentTimeMillis();
+
+            state = new byte[imageWidth * imageHeight];
+            queue = new int[imageWidth * imageHeight];
+            region = new int[imageWidth * imageHeight];
+            queueHead = 0;
+            queueTail = 0;
+            iterated = 0;
+            filled = 0;
+
+            for (int i = 0; i < imageWidth; i++) {
+                enqueue(i);
+                enqueue((imageHeight - 1)*imageWidth + i);
+            }
+            for (int j = 1; j < imageHeight - 1; j++) {
+                enqueue(j*imageWidth);
+                enqueue(j*imageWidth + imageWidth - 1);
+            }
+
+            do {
+                trace();
+            } while (!isRenderCancelled() && fillRegions());
+
+            finishInParallel(getRenderPool());
+
+            iteratedPixels = iterated;
+            System.out.println("Boundary tracing time: " + (System.currentTimeMillis()-t1) + " (" + filled + " pixels filled)");
+
+            state = null;
+            queue = null;
+            region = null;
+        }
+
+        private void enqueue(int index) {
+            if ((state[index] & QUEUED) == 0) {
+                state[index] |= QUEUED;
+                queue[queueTail++] = index;
+            }
+        }
+
+        private void load(int index) {
+            if ((state[index] & (ITERATED | FILLED)) == 0) {
+                iterateRect(index % imageWidth, index / imageWidth, 1, 1);
+                state[index] |= ITERATED;
+                iterated++;
+            }
+        }
+
+        /**
+         * Iterates the queued pixels and their neighbours until the queue is empty.
+         */
+        private void trace() {
+            int index, x, y;
+            boolean fillable;
+
+            while (queueHead < queueTail && !isRenderCancelled()) {
+                index = queue[queueHead++];
+                x = index % imageWidth;
+                y = index / imageWidth;
+
+                load(index);
+                fillable = canFillRegion(pixelColorNums[index]);
+
+                if (x > 0) {
+                    visit(index, index - 1, fillable);
+                }
+                if (x < imageWidth - 1) {
+                    visit(index, index + 1, fillable);
+                }
+                if (y > 0) {
+                    visit(index, index - imageWidth, fillable);
+                }
+                if (y < imageHeight - 1) {
+                    visit(index, index + imageWidth, fillable);
+                }
+            }
+        }
+
+        private void visit(int index, int neighbour, boolean fillable) {
+            load(neighbour);
+            if (!fillable || !sameResult(index, neighbour)) {
+                enqueue(neighbour);
+            }
+        }
+
+        /**
+         * Flood-fills every region of pixels not yet reached whose enclosing pixels share a result
+         * that may be filled, and queues the rim of every other region.
+         *
+         * @return true if any region was queued, so tracing must continue
+         */
+        private boolean fillRegions() {
+            boolean opened = false;
+            int index;
+
+            for (int start = 0; start < state.length; start++) {
+                if (state[start] != 0) {
+                    continue;
+                }
+
+                // Unreached pixels are never on the edge of the image, which is queued first
+                regionSize = 1;
+                regionBorder = -1;
+                regionUniform = true;
+                region[0] = start;
+                state[start] = VISITED;
+
+                for (int k = 0; k < regionSize; k++) {
+                    index = region[k];
+                    explore(index - 1);
+                    explore(index + 1);
+                    explore(index - imageWidth);
+                    explore(index + imageWidth);
+                }
+
+                if (regionUniform && canFillRegion(pixelColorNums[regionBorder])) {
+                    for (int k = 0; k < regionSize; k++) {
+                        index = region[k];
+                        pixelColorNums[index] = pixelColorNums[regionBorder];
+                        iterationCounts[index] = iterationCounts[regionBorder];
+                        pixelPeriods[index] = pixelPeriods[regionBorder];
+                        state[index] = FILLED;
+                    }
+                    filled += regionSize;
+                } else {
+                    for (int k = 0; k < regionSize; k++) {
+                        index = region[k];
+                        if (isReached(index - 1) || isReached(index + 1)
+                                || isReached(index - imageWidth) || isReached(index + imageWidth)) {
+                            enqueue(index);
+                        }
+                    }
+                    opened = true;
+                }
+            }
+
+            if (opened) {
+                for (int k = 0; k < state.length; k++) {
+                    state[k] &= ~VISITED;
+                }
+            }
+            return opened;
+        }
+
+        /**
+         * Adds a neighbour of the region being flood-filled to it if it has not been reached, or
+         * otherwise compares its result with the rest of the region's border.
+         */
+        private void explore(int neighbour) {
+            if (isReached(neighbour)) {
+                if (regionBorder < 0) {
+                    regionBorder = neighbour;
+                } else if (regionUniform && !sameResult(regionBorder, neighbour)) {
+                    regionUniform = false;
+                }
+            } else if ((state[neighbour] & VISITED) == 0) {
+                state[neighbour] |= VISITED;
+                region[regionSize++] = neighbour;
+            }
+        }
+
+        private boolean isReached(int index) {
+            return (state[index] & (ITERATED | FILLED)) != 0;
+        }
+    }
+
 }
@@ -4,7 +4,10 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 enum FractalMode {MANDELBROT, JULIA, NEWTON, BURNINGSHIP, MULTIBROT, TRICORN, BHUDDABROT}
 
@@ -19,6 +22,19 @@ public class FractalApp {
     private FractalMenu fractalMenu;
     private BhuddaWindow bhuddaWindow;
 
+    /**
+     * Makes every change to the fractal, and renders it, in the background, so that the interface
+     * stays responsive and a frame made stale by further zooming or panning is abandoned. The
+     * threads that iterate pixels belong to the fractals' shared render pool.
+     */
+    private final RenderCoordinator renderCoordinator = new RenderCoordinator(this::frameRendered, this::fractalChanged);
+
+    /**
+     * The newest frame published by the coordinator that has not yet been shown. Frames arriving
+     * faster than the viewer can show them replace each other here, so only the latest is shown.
+     */
+    private final AtomicReference<BufferedImage> latestFrame = new AtomicReference<>();
+
     public FractalApp() {
 
         SwingUtilities.invokeLater(new Runnable() {
@@ -63,6 +79,107 @@ public class FractalApp {
         new FractalApp();
     }
 
+    /**
+     * Called on the render thread with each new frame.
+     */
+    private void frameRendered(BufferedImage image) {
+        if (latestFrame.getAndSet(image) == null) {
+            SwingUtilities.invokeLater(() -> fractalViewer.showFrame(latestFrame.getAndSet(null)));
+        }
+    }
+
+    /**
+     * Called on the render thread once queued changes have been applied to the fractal. Only the
+     * render thread changes the fractal, so its view is read here and passed to the event
+     * dispatch thread as a snapshot.
+     */
+    private void fractalChanged(Fractal changed) {
+        ViewState view = new ViewState(changed);
+        SwingUtilities.invokeLater(() -> {
+            fractalViewer.showView(view);
+            settingsWindow.showView(view);
+            bhuddaWindow.showView(view);
+        });
+    }
+
+    /**
+     * The view and settings of a fractal as they were when it was last changed, which the
+     * windows show without reading the fractal itself.
+     */
+    private static final class ViewState {
+
+        private final String centre, centreReal, centreImag;
+        private final double zoomLevel;
+        private final int maxIterations, iteratorMaxIterations, supersampleThreshold;
+        private final boolean multithreading, supersampling, vectorisation, doubleDouble;
+        private final SupersampleGrid supersampleGrid;
+        private final RenderMode renderMode;
+        private final ColorStyle colorStyle;
+        private final Color[] colors;
+
+        /**
+         * The polynomial of a Newton fractal and its coefficients, or null for other fractals.
+         */
+        private final String newtonPolynomial;
+        private final Complex[] newtonCoeffs;
+
+        /**
+         * The settings of a Buddhabrot, or null for other fractals.
+         */
+        private final BhuddaSettings bhudda;
+
+        private ViewState(Fractal fractal) {
+            this.centre = fractal.getCentre().toShortString();
+            this.centreReal = fractal.getCentreRealString();
+            this.centreImag = fractal.getCentreImagString();
+            this.zoomLevel = fractal.getZoomLevel();
+            this.maxIterations = fractal.getMaxIterations();
+            this.iteratorMaxIterations = fractal.iterator.getMaxIterations();
+            this.supersampleThreshold = fractal.getSupersampleThreshold();
+            this.multithreading = fractal.getMultithreadingEnabled();
+            this.supersampling = fractal.getSupersamplingEnabled();
+            this.vectorisation = fractal.getVectorisationEnabled();
+            this.doubleDouble = fractal.getDoubleDoubleEnabled();
+            this.supersampleGrid = fractal.getSupersampleGrid();
+            this.renderMode = fractal.getRenderMode();
+            this.colorStyle = fractal.getColorStyle();
+            this.colors = fractal.colors.clone();
+            if (fractal.iterator instanceof NewtonIterator) {
+                Polynomial f = ((NewtonIterator) fractal.iterator).getF();
+                this.newtonPolynomial = f.toString();
+                this.newtonCoeffs = new Complex[f.coeff.length];
+                for (int i = 0; i < f.coeff.length; i++) {
+                    this.newtonCoeffs[i] = new Complex(f.coeff[i].getReal(), f.coeff[i].getImag());
+                }
+            } else {
+                this.newtonPolynomial = null;
+                this.newtonCoeffs = null;
+            }
+            this.bhudda = fractal instanceof BhuddabrotFractal ? new BhuddaSettings((BhuddabrotFractal) fractal) : null;
+        }
+    }
+
+    private static final class BhuddaSettings {
+
+        private final boolean nebula, importanceSampling, exposure;
+        private final HistogramPrecision precision;
+        private final int exposureBatches, numRandomPoints;
+        private final double[] pointCoeffs = new double[3], iterCoeffs = new double[3];
+
+        private BhuddaSettings(BhuddabrotFractal fractal) {
+            this.nebula = fractal.getNebulaEnabled();
+            this.importanceSampling = fractal.getImportanceSamplingEnabled();
+            this.exposure = fractal.getExposureEnabled();
+            this.precision = fractal.getHistogramPrecision();
+            this.exposureBatches = fractal.getExposureBatches();
+            this.numRandomPoints = fractal.getNumRandomPoints();
+            for (int i = 0; i < 3; i++) {
+                this.pointCoeffs[i] = fractal.getPointCoeff(i);
+                this.iterCoeffs[i] = fractal.getIterCoeff(i);
+            }
+        }
+    }
+
     private class FractalMenu extends JLayeredPane {
 
         private FractalMenu() {
@@ -101,7 +218,7 @@ public class FractalApp {
                     System.out.println(fractalMode.toString());
                     appFrame.remove(this);
                     fractalViewer.setup();
-                    colorWindow.setup();
+                    colorWindow.setup(fractalViewer.view);
                     appFrame.revalidate();
                 });
                 fractalSelectionBox.add(newButton);
@@ -118,7 +235,7 @@ public class FractalApp {
         }
     }
 
-    private class fractalMouseListener implements MouseListener {
+    private class fractalMouseListener implements MouseListener, MouseMotionListener {
 
         int startX, startY;
 
@@ -129,31 +246,49 @@ public class FractalApp {
         public void mousePressed(MouseEvent e) {
             startX = e.getX();
             startY = e.getY();
+            fractalViewer.fractalFrame.dragging = true;
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            // Move the image shown with the mouse until the translated frame arrives. The image is
+            // stored upright in every mode, so it follows the mouse even when the axis is flipped
+            fractalViewer.fractalFrame.setOffset(e.getX() - startX, e.getY() - startY);
         }
 
+        @Override
+        public void mouseMoved(MouseEvent e) {}
+
         @Override
         public void mouseReleased(MouseEvent e) {
+            fractalViewer.fractalFrame.dragging = false;
+
             int endX = e.getX();
             int endY = e.getY();
 
             int dx = endX - startX;
             int dy = endY - startY;
 
+            if (dx == 0 && dy == 0) {
+                return;
+            }
+
             if (fractalMode == FractalMode.BHUDDABROT){
 
                 int h = fractalViewer.fractalFrame.getBounds().height;
-                double d = 4.0 / (h * fractal.getZoomLevel());
+                int moveX = dx, moveY = dy;
 
-                double dX = -1 * (d * (endX - startX));
-                double dY = 1 * (d * (endY - startY));
+                fractalViewer.updateFractal(f -> {
+                    double d = 4.0 / (h * f.getZoomLevel());
 
-                double newX = fractal.getCentre().getReal() + dX;
-                double newY = fractal.getCentre().getImag() + dY;
+                    double dX = -1 * (d * moveX);
+                    double dY = 1 * (d * moveY);
 
-                fractal.setCentre(newX, newY);
-                settingsWindow.update();
-                fractalViewer.updateFractal();
-                fractalViewer.refresh();
+                    double newX = f.getCentre().getReal() + dX;
+                    double newY = f.getCentre().getImag() + dY;
+
+                    f.setCentre(newX, newY);
+                });
 
             } else {
 
@@ -161,10 +296,7 @@ public class FractalApp {
                     dy = -1 * dy;
                 }
 
-                fractal.translateFractal(dx, dy);
-                fractalViewer.refresh();
-                settingsWindow.update();
-                appFrame.revalidate();
+                renderCoordinator.requestTranslate(dx, dy);
             }
 
         }
@@ -176,11 +308,72 @@ public class FractalApp {
         public void mouseExited(MouseEvent e) {}
     }
 
+    /**
+     * Paints the image of the fractal straight onto the screen. A new frame replaces the image
+     * without creating or laying out any components, and parts of the image that have been
+     * written since it was shown can be repainted on their own.
+     */
+    private class FractalCanvas extends JComponent {
+
+        private BufferedImage image;
+
+        private int offsetX, offsetY;
+
+        /**
+         * True while the image is being dragged, during which new frames keep the offset.
+         */
+        private boolean dragging;
+
+        private FractalCanvas() {
+            setOpaque(true);
+        }
+
+        /**
+         * Shows a new image, clearing any offset unless the image is being dragged.
+         */
+        private void setImage(BufferedImage image) {
+            this.image = image;
+            if (!this.dragging) {
+                this.offsetX = 0;
+                this.offsetY = 0;
+            }
+            repaint();
+        }
+
+        /**
+         * Shows the image moved by the given number of pixels, e.g. while it is being dragged.
+         */
+        private void setOffset(int offsetX, int offsetY) {
+            if (offsetX != this.offsetX || offsetY != this.offsetY) {
+                this.offsetX = offsetX;
+                this.offsetY = offsetY;
+                repaint();
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            if (this.image != null) {
+                g.drawImage(this.image, this.offsetX, this.offsetY, null);
+            }
+        }
+    }
+
     private class FractalViewer extends JPanel {
 
         private JLabel centerLabel, zoomLabel;
         private JTextField juliaPowInput, juliaReCInput, juliaImCInput, multiPowInput;
-        private JPanel topPanel, fractalFrame, bottomPanel, extraPanel;
+        private JPanel topPanel, bottomPanel, extraPanel;
+        private FractalCanvas fractalFrame;
+        private BufferedImage displayedImage;
+
+        /**
+         * The view shown in the labels, or null until the first fractal has been changed.
+         */
+        private ViewState view;
 
         private FractalViewer() {
 
@@ -201,14 +394,14 @@ public class FractalApp {
             this.juliaReCInput = new JTextField("-0.835",4);
             this.juliaImCInput = new JTextField("0.2321",4);
             this.multiPowInput = new JTextField("2.3568",4);
-            this.fractalFrame = new JPanel();
+            this.fractalFrame = new FractalCanvas();
             this.topPanel = new JPanel();
             this.bottomPanel = new JPanel();
             this.extraPanel = new JPanel();
 
             JPanel buttonPanel = new JPanel();
-            JLabel centerLabel = new JLabel("Centre: " + new Complex().toShortString());
-            JLabel zoomLabel = new JLabel("Zoom level:      1.00");
+            this.centerLabel.setText("Centre: " + new Complex().toShortString());
+            this.zoomLabel.setText("Zoom level:      1.00");
             JButton homeButton = new JButton("Home");
             JButton resetButton = new JButton("Reset");
             JButton saveButton = new JButton("Save");
@@ -218,6 +411,7 @@ public class FractalApp {
             JToggleButton colorButton = new JToggleButton("Colors");
 
             homeButton.addActionListener((e) -> {
+                renderCoordinator.cancel();
                 appFrame.remove(fractalViewer);
                 settingsWindow.visible = false;
                 settingsButton.setSelected(false);
@@ -238,7 +432,11 @@ public class FractalApp {
                 settingsWindow.update();
             });
 
-            saveButton.addActionListener((e) -> fractal.saveFractal("testFractal.png"));
+            saveButton.addActionListener((e) -> {
+                if (this.displayedImage != null) {
+                    Fractal.saveImage(this.displayedImage, "testFractal.png");
+                }
+            });
 
             settingsButton.addActionListener((e) -> {
                 colorWindow.visible = false;
@@ -257,31 +455,29 @@ public class FractalApp {
             }));
 
             zoomInButton.addActionListener((e) -> {
-                fractal.setZoomLevel(fractal.getZoomLevel() * 1.5);
-                settingsWindow.update();
-                this.updateFractal();
-                this.refresh();
+                this.zoomFractal(1.5);
             });
 
             zoomOutButton.addActionListener((e) -> {
-                fractal.setZoomLevel(fractal.getZoomLevel() * (1 / 1.5));
-                settingsWindow.update();
-                this.updateFractal();
-                this.refresh();
+                this.zoomFractal(1 / 1.5);
             });
 
             fractalFrame.addMouseWheelListener((e) -> {
+                double factor = 1;
                 if(e.getWheelRotation() < 0) {
-                    fractal.setZoomLevel(fractal.getZoomLevel() * (1 / 1.1));
+                    factor = 1 / 1.1;
                 }
                 if(e.getWheelRotation() > 0) {
-                    fractal.setZoomLevel(fractal.getZoomLevel() * 1.1);
+                    factor = 1.1;
+                }
+                if (factor != 1) {
+                    this.zoomFractal(factor);
                 }
-                this.updateFractal();
-                this.refresh();
             });
 
-            fractalFrame.addMouseListener(new fractalMouseListener());
+            fractalMouseListener mouseListener = new fractalMouseListener();
+            fractalFrame.addMouseListener(mouseListener);
+            fractalFrame.addMouseMotionListener(mouseListener);
 
             this.topPanel.add(homeButton);
             this.topPanel.add(resetButton);
@@ -294,8 +490,8 @@ public class FractalApp {
             buttonPanel.add(zoomOutButton);
 
             this.bottomPanel.setLayout(new GridLayout(0,4));
-            this.bottomPanel.add(centerLabel);
-            this.bottomPanel.add(zoomLabel);
+            this.bottomPanel.add(this.centerLabel);
+            this.bottomPanel.add(this.zoomLabel);
             this.bottomPanel.add(buttonPanel);
 
             add(BorderLayout.NORTH, this.topPanel);
@@ -328,7 +524,7 @@ public class FractalApp {
                 colorWindow.visible = false;
                 //colorButton.setSelected(false);
                 colorWindow.update();
-                new NewtonControlWindow();
+                new NewtonControlWindow(this.view);
             });
 
             bhuddaButton.addActionListener((e) -> {
@@ -374,6 +570,16 @@ public class FractalApp {
                     break;
             }
 
+            // Show coarse previews while each frame is rendered
+            fractal.setRenderMode(RenderMode.PROGRESSIVE);
+            // Taken before the render thread is given the fractal, after which only it reads it
+            showView(new ViewState(fractal));
+            if (fractalMode == FractalMode.BHUDDABROT) {
+                renderCoordinator.setFractal(fractal, f -> ((BhuddabrotFractal) f).createFractal2());
+            } else {
+                renderCoordinator.setFractal(fractal, Fractal::createFractal);
+            }
+
             this.topPanel.add(this.extraPanel);
             System.out.println(this.extraPanel);
 
@@ -386,57 +592,84 @@ public class FractalApp {
         }
 
         private void updateFractal() {
+            updateFractal(f -> {});
+        }
+
+        /**
+         * Asks for the fractal to be changed and then re-rendered in the background. The inputs
+         * are read here, but the fractal itself is only changed on the render thread.
+         */
+        private void updateFractal(Consumer<Fractal> change) {
 
             Rectangle r = fractalFrame.getBounds();
-            fractal.setImageDimensions(r.width, r.height);
-
-            if (fractalMode == FractalMode.JULIA) {
-                double cReal = Double.parseDouble(juliaReCInput.getText().trim());
-                double cImag = Double.parseDouble(juliaImCInput.getText().trim());
-                double pow = Double.parseDouble(juliaPowInput.getText().trim());
-                ((JuliaFractal) fractal).iterator.setC(new Complex(cReal, cImag));
-                ((JuliaFractal) fractal).iterator.setPower(pow);
+            FractalMode mode = fractalMode;
+            double juliaReC = 0, juliaImC = 0, juliaPow = 0, multiPow = 0;
+
+            if (mode == FractalMode.JULIA) {
+                juliaReC = Double.parseDouble(juliaReCInput.getText().trim());
+                juliaImC = Double.parseDouble(juliaImCInput.getText().trim());
+                juliaPow = Double.parseDouble(juliaPowInput.getText().trim());
             }
 
-            if (fractalMode == FractalMode.MULTIBROT) {
-                double pow = Double.parseDouble(multiPowInput.getText().trim());
-                ((MultibrotFractal) fractal).iterator.setPower(pow);
+            if (mode == FractalMode.MULTIBROT) {
+                multiPow = Double.parseDouble(multiPowInput.getText().trim());
             }
 
+            double cReal = juliaReC, cImag = juliaImC, jPow = juliaPow, mPow = multiPow;
+            renderCoordinator.requestRender(f -> {
+                change.accept(f);
+                f.setImageDimensions(r.width, r.height);
+
+                if (mode == FractalMode.JULIA) {
+                    ((JuliaFractal) f).iterator.setC(new Complex(cReal, cImag));
+                    ((JuliaFractal) f).iterator.setPower(jPow);
+                }
+
+                if (mode == FractalMode.MULTIBROT) {
+                    ((MultibrotFractal) f).iterator.setPower(mPow);
+                }
+            });
+
+        }
+
+        /**
+         * Asks for the fractal to be zoomed by the given factor. The new frame is rendered from
+         * the one shown where possible, so the previous frame is resampled into a preview at once.
+         */
+        private void zoomFractal(double factor) {
             if (fractalMode == FractalMode.BHUDDABROT) {
-                ((BhuddabrotFractal)fractal).createFractal2();
+                this.updateFractal(f -> f.setZoomLevel(f.getZoomLevel() * factor));
             } else {
-                fractal.createFractal();
+                Rectangle r = fractalFrame.getBounds();
+                renderCoordinator.requestZoom(factor, r.width, r.height);
             }
+        }
 
+        /**
+         * Swaps in a frame published by the render coordinator.
+         */
+        private void showFrame(BufferedImage image) {
+            this.displayedImage = image;
             refresh();
+        }
 
+        /**
+         * Shows the view of the fractal taken by the render thread after its last change.
+         */
+        private void showView(ViewState view) {
+            this.view = view;
+            refresh();
         }
 
         private void refresh() {
 
-            this.bottomPanel.remove(0);
-            this.bottomPanel.remove(0);
-
-            this.centerLabel.setText("Centre: " + fractal.getCentre().toShortString());
-            this.zoomLabel.setText(String.format("Zoom level: %10.2f", fractal.getZoomLevel()));
-
-            this.bottomPanel.add(centerLabel, 0);
-            this.bottomPanel.add(zoomLabel, 1);
-            //this.bottomPanel.repaint();
-            this.topPanel.repaint();
-            //this.bottomPanel.revalidate();
-            this.topPanel.revalidate();
-
-            BufferedImage fractalImage = fractal.getFractalImage();
-            this.fractalFrame.removeAll();
-            this.fractalFrame.add(new JLabel(new ImageIcon(fractalImage)));
-
-            revalidate();
-            repaint();
+            if (this.view != null) {
+                this.centerLabel.setText("Centre: " + this.view.centre);
+                this.zoomLabel.setText(String.format("Zoom level: %10.2f", this.view.zoomLevel));
+            }
 
-            appFrame.revalidate();
-            appFrame.repaint();
+            // Only the canvas is repainted; no components are created or laid out
+            this.fractalFrame.setImage(this.displayedImage);
 
         }
 
@@ -444,20 +677,27 @@ public class FractalApp {
 
     private class SettingsWindow extends JFrame {
 
-        private JLabel xInputLabel, yInputLabel, zoomLabel, iterationLabel;
-        private JTextField xInput, yInput, zoomInput;
-        private JToggleButton multithreadButton, multisamplingButton;
+        private JLabel xInputLabel, yInputLabel, zoomLabel, iterationLabel, renderModeLabel, supersampleGridLabel, supersampleThresholdLabel;
+        private JTextField xInput, yInput, zoomInput, supersampleThresholdInput;
+        private JToggleButton multithreadButton, multisamplingButton, vectorisationButton, doubleDoubleButton;
+        private JComboBox<RenderMode> renderModeBox;
+        private JComboBox<SupersampleGrid> supersampleGridBox;
         private JButton applyButton;
         private JSlider slider;
         private boolean visible;
 
+        /**
+         * The view shown, or null until the first fractal has been changed.
+         */
+        private ViewState view;
+
         private SettingsWindow() {
 
             super("Advanced settings");
             JPanel panel = new JPanel();
             panel.setLayout(new GridLayout(0,1));
             panel.setVisible(true);
-            setSize(300, 350);
+            setSize(300, 460);
             setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
             setUndecorated(true);
             setResizable(false);
@@ -472,6 +712,15 @@ public class FractalApp {
             this.slider = new JSlider(JSlider.HORIZONTAL, 10, 2000, 100);
             this.multithreadButton = new JToggleButton("Toggle multithreaded rendering");
             this.multisamplingButton = new JToggleButton("Toggle supersampling");
+            this.supersampleGridLabel = new JLabel("Supersampling grid:");
+            this.supersampleGridBox = new JComboBox<>(SupersampleGrid.values());
+            this.supersampleThresholdLabel = new JLabel("Edge threshold:");
+            this.supersampleThresholdInput = new JTextField(4);
+            this.vectorisationButton = new JToggleButton("Toggle SIMD iteration");
+            this.vectorisationButton.setEnabled(Iterator.VECTOR_API_AVAILABLE);
+            this.doubleDoubleButton = new JToggleButton("Toggle double-double precision");
+            this.renderModeLabel = new JLabel("Render mode:");
+            this.renderModeBox = new JComboBox<>(RenderMode.values());
             this.applyButton = new JButton("Apply");
             this.visible = false;
 
@@ -479,33 +728,62 @@ public class FractalApp {
             this.yInputLabel.setHorizontalAlignment(0);
             this.zoomLabel.setHorizontalAlignment(0);
             this.iterationLabel.setHorizontalAlignment(0);
+            this.renderModeLabel.setHorizontalAlignment(0);
+            this.supersampleGridLabel.setHorizontalAlignment(0);
+            this.supersampleThresholdLabel.setHorizontalAlignment(0);
 
             JPanel xPanel = new JPanel();
             JPanel yPanel = new JPanel();
             JPanel zoomPanel = new JPanel();
             JPanel iterationPanel = new JPanel();
+            JPanel renderModePanel = new JPanel();
+            JPanel supersampleGridPanel = new JPanel();
+            JPanel supersampleThresholdPanel = new JPanel();
 
             xPanel.setLayout(new GridLayout(1, 0));
             yPanel.setLayout(new GridLayout(1, 0));
             zoomPanel.setLayout(new GridLayout(1, 0));
             iterationPanel.setLayout(new GridLayout(1, 0));
+            renderModePanel.setLayout(new GridLayout(1, 0));
+            supersampleGridPanel.setLayout(new GridLayout(1, 0));
+            supersampleThresholdPanel.setLayout(new GridLayout(1, 0));
 
             slider.addChangeListener(l -> {
                 this.iterationLabel.setText("Maximum iterations: " + slider.getValue());
             });
 
             applyButton.addActionListener(l -> {
-                fractal.setCentre(Double.parseDouble(this.xInput.getText()), Double.parseDouble(this.yInput.getText()));
-                fractal.setZoomLevel(Double.parseDouble(this.zoomInput.getText()));
-                fractal.setMaxIterations(this.slider.getValue());
-                if (fractal.getMultithreadingEnabled() != this.multithreadButton.isSelected()) {
-                    fractal.toggleMultithreadingEnabled();
-                }
-                if (fractal.getSupersamplingEnabled() != this.multisamplingButton.isSelected()) {
-                    fractal.toggleMultiSamplingEnabled();
-                }
-                fractalViewer.updateFractal();
-                this.update();
+                String x = this.xInput.getText();
+                String y = this.yInput.getText();
+                double zoomLevel = Double.parseDouble(this.zoomInput.getText());
+                int maxIterations = this.slider.getValue();
+                boolean multithreading = this.multithreadButton.isSelected();
+                boolean multisampling = this.multisamplingButton.isSelected();
+                SupersampleGrid supersampleGrid = (SupersampleGrid) this.supersampleGridBox.getSelectedItem();
+                int supersampleThreshold = Integer.parseInt(this.supersampleThresholdInput.getText().trim());
+                boolean vectorisation = this.vectorisationButton.isSelected();
+                boolean doubleDouble = this.doubleDoubleButton.isSelected();
+                RenderMode renderMode = (RenderMode) this.renderModeBox.getSelectedItem();
+                fractalViewer.updateFractal(f -> {
+                    f.setCentre(x, y);
+                    f.setZoomLevel(zoomLevel);
+                    f.setMaxIterations(maxIterations);
+                    if (f.getMultithreadingEnabled() != multithreading) {
+                        f.toggleMultithreadingEnabled();
+                    }
+                    if (f.getSupersamplingEnabled() != multisampling) {
+                        f.toggleMultiSamplingEnabled();
+                    }
+                    f.setSupersampleGrid(supersampleGrid);
+                    f.setSupersampleThreshold(supersampleThreshold);
+                    if (f.getVectorisationEnabled() != vectorisation) {
+                        f.toggleVectorisationEnabled();
+                    }
+                    if (f.getDoubleDoubleEnabled() != doubleDouble) {
+                        f.toggleDoubleDoubleEnabled();
+                    }
+                    f.setRenderMode(renderMode);
+                });
             });
 
             xPanel.add(this.xInputLabel);
@@ -516,6 +794,12 @@ public class FractalApp {
             zoomPanel.add(this.zoomInput);
             iterationPanel.add(this.iterationLabel);
             iterationPanel.add(this.slider);
+            renderModePanel.add(this.renderModeLabel);
+            renderModePanel.add(this.renderModeBox);
+            supersampleGridPanel.add(this.supersampleGridLabel);
+            supersampleGridPanel.add(this.supersampleGridBox);
+            supersampleThresholdPanel.add(this.supersampleThresholdLabel);
+            supersampleThresholdPanel.add(this.supersampleThresholdInput);
 
             panel.add(xPanel);
             panel.add(yPanel);
@@ -524,6 +808,11 @@ public class FractalApp {
 
             panel.add(multithreadButton);
             panel.add(multisamplingButton);
+            panel.add(supersampleGridPanel);
+            panel.add(supersampleThresholdPanel);
+            panel.add(vectorisationButton);
+            panel.add(doubleDoubleButton);
+            panel.add(renderModePanel);
             panel.add(this.applyButton);
 
             add(panel);
@@ -534,18 +823,34 @@ public class FractalApp {
             this.visible = !this.visible;
         }
 
+        /**
+         * Shows the view of the fractal taken by the render thread after its last change.
+         */
+        private void showView(ViewState view) {
+            this.view = view;
+            update();
+        }
+
         private void update() {
 
             this.setLocation(appFrame.getX()+appFrame.getWidth()-this.getWidth()-7, appFrame.getY()+66);
             setAlwaysOnTop(true);
 
-            this.xInput.setText(String.valueOf(fractal.getCentre().getReal()));
-            this.yInput.setText(String.valueOf(fractal.getCentre().getImag()));
-            this.zoomInput.setText(String.valueOf(fractal.getZoomLevel()));
-            this.iterationLabel.setText("Maximum iterations: " + fractal.iterator.getMaxIterations());
-            this.slider.setValue(fractal.getMaxIterations());
-            this.multithreadButton.setSelected(fractal.getMultithreadingEnabled());
-            this.multisamplingButton.setSelected(fractal.getSupersamplingEnabled());
+            ViewState view = this.view;
+            if (view != null) {
+                this.xInput.setText(view.centreReal);
+                this.yInput.setText(view.centreImag);
+                this.zoomInput.setText(String.valueOf(view.zoomLevel));
+                this.iterationLabel.setText("Maximum iterations: " + view.iteratorMaxIterations);
+                this.slider.setValue(view.maxIterations);
+                this.multithreadButton.setSelected(view.multithreading);
+                this.multisamplingButton.setSelected(view.supersampling);
+                this.supersampleGridBox.setSelectedItem(view.supersampleGrid);
+                this.supersampleThresholdInput.setText(String.valueOf(view.supersampleThreshold));
+                this.vectorisationButton.setSelected(view.vectorisation);
+                this.doubleDoubleButton.setSelected(view.doubleDouble);
+                this.renderModeBox.setSelectedItem(view.renderMode);
+            }
             this.setVisible(this.visible);
 
         }
@@ -581,10 +886,12 @@ public class FractalApp {
 
             JButton applyButton = new JButton("Apply");
             applyButton.addActionListener(l -> {
-                fractal.colors = this.selectedColors.clone();
-                fractal.setColorStyle(this.selectedColorstyle);
-                fractal.colorFractal();
-                fractalViewer.refresh();
+                Color[] colors = this.selectedColors.clone();
+                ColorStyle colorStyle = this.selectedColorstyle;
+                renderCoordinator.requestRecolour(f -> {
+                    f.colors = colors;
+                    f.setColorStyle(colorStyle);
+                });
                 this.update();
             });
 
@@ -595,9 +902,12 @@ public class FractalApp {
 
         }
 
-        private void setup() {
+        /**
+         * Sets the window up for the given view of a newly chosen fractal.
+         */
+        private void setup(ViewState view) {
 
-            this.selectedColorstyle = fractal.getColorStyle();
+            this.selectedColorstyle = view.colorStyle;
 
             this.styleSelectionBox.removeAll();
             this.styleSelectionBox.setLayout(new GridLayout(0, 1));
@@ -607,14 +917,14 @@ public class FractalApp {
             for (ColorStyle colorStyle : ColorStyle.values()) {
                 JRadioButton newButton = new JRadioButton(colorStyle.name().substring(0, 1) + colorStyle.name().substring(1).toLowerCase());
                 newButton.addActionListener((e) -> this.selectedColorstyle = colorStyle);
-                if (fractal.getColorStyle() == colorStyle) {
+                if (view.colorStyle == colorStyle) {
                     newButton.setSelected(true);
                 }
                 colourModeButtonGroup.add(newButton);
                 this.styleSelectionBox.add(newButton);
             }
 
-            this.selectedColors = fractal.colors.clone();
+            this.selectedColors = view.colors.clone();
             int nCols = selectedColors.length;
 
             this.colorSelectionBox.removeAll();
@@ -655,11 +965,18 @@ public class FractalApp {
         private boolean visible;
         private JPanel pointBox, pointCoeffBox, iterCoeffBox;
 
-        private boolean nebulaModeSelected;
+        private boolean nebulaModeSelected, importanceSamplingSelected, exposureSelected;
+        private JTextField exposureBatchesField;
         private JTextField rPointCoeffField, gPointCoeffField, bPointCoeffField;
         private JSlider pointSlider, rIterSlider, gIterSlider, bIterSlider;
         private JLabel pointLabel, rIterLabel, gIterLabel, bIterLabel, rPointLabel, gPointLabel, bPointLabel;
-        private JToggleButton nebulaModeToggleButton;
+        private JToggleButton nebulaModeToggleButton, importanceSamplingToggleButton, exposureToggleButton;
+        private JComboBox<HistogramPrecision> precisionBox;
+
+        /**
+         * The view shown, or null until the first fractal has been changed.
+         */
+        private ViewState view;
 
         private BhuddaWindow() {
 
@@ -667,7 +984,7 @@ public class FractalApp {
             JPanel panel = new JPanel();
             panel.setLayout(new GridLayout(0,1));
             panel.setVisible(true);
-            setSize(300, 350);
+            setSize(300, 550);
             setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
             setUndecorated(true);
             setResizable(false);
@@ -691,6 +1008,34 @@ public class FractalApp {
                 this.setNebulaInputEnabled();
             });
 
+            this.importanceSamplingToggleButton = new JToggleButton("Enable importance sampling");
+            this.importanceSamplingToggleButton.addActionListener(l -> {
+                this.importanceSamplingSelected = !this.importanceSamplingSelected;
+            });
+
+            this.exposureToggleButton = new JToggleButton("Accumulate exposure");
+            this.exposureToggleButton.addActionListener(l -> {
+                this.exposureSelected = !this.exposureSelected;
+            });
+
+            JPanel exposurePanel = new JPanel(new GridLayout(0, 3));
+            JLabel exposureBatchesLabel = new JLabel("Batches:");
+            exposureBatchesLabel.setHorizontalAlignment(0);
+            this.exposureBatchesField = new JTextField("20", 4);
+            JButton stopButton = new JButton("Stop");
+            // Keeps the exposure so far on screen; applying again resumes it
+            stopButton.addActionListener(l -> renderCoordinator.cancel());
+            exposurePanel.add(exposureBatchesLabel);
+            exposurePanel.add(this.exposureBatchesField);
+            exposurePanel.add(stopButton);
+
+            JPanel precisionPanel = new JPanel(new GridLayout(0, 2));
+            JLabel precisionLabel = new JLabel("Histogram precision:");
+            precisionLabel.setHorizontalAlignment(0);
+            this.precisionBox = new JComboBox<>(HistogramPrecision.values());
+            precisionPanel.add(precisionLabel);
+            precisionPanel.add(this.precisionBox);
+
 
             JPanel pointCoeffPanel = new JPanel(new GridLayout(3,0));
             JPanel spacerPanel1 = new JPanel();
@@ -756,22 +1101,46 @@ public class FractalApp {
 
             JButton applyButton = new JButton("Apply");
             applyButton.addActionListener(l -> {
-                ((BhuddabrotFractal) fractal).setNumRandomPoints(pointSlider.getValue());
-                ((BhuddabrotFractal) fractal).setPointCoeff(0, Double.parseDouble(this.rPointCoeffField.getText().trim()));
-                ((BhuddabrotFractal) fractal).setPointCoeff(1, Double.parseDouble(this.gPointCoeffField.getText().trim()));
-                ((BhuddabrotFractal) fractal).setPointCoeff(2, Double.parseDouble(this.bPointCoeffField.getText().trim()));
-                ((BhuddabrotFractal) fractal).setIterCoeff(0, ((double)this.rIterSlider.getValue())/1000.0);
-                ((BhuddabrotFractal) fractal).setIterCoeff(1, ((double)this.gIterSlider.getValue())/1000.0);
-                ((BhuddabrotFractal) fractal).setIterCoeff(2, ((double)this.bIterSlider.getValue())/1000.0);
-                if (this.nebulaModeSelected != ((BhuddabrotFractal)fractal).getNebulaEnabled()) {
-                    ((BhuddabrotFractal) fractal).toggleNebulaEnabled();
-                }
-                fractalViewer.updateFractal();
-                fractalViewer.refresh();
-                this.update();
+                int numRandomPoints = pointSlider.getValue();
+                double[] pointCoeffs = {
+                        Double.parseDouble(this.rPointCoeffField.getText().trim()),
+                        Double.parseDouble(this.gPointCoeffField.getText().trim()),
+                        Double.parseDouble(this.bPointCoeffField.getText().trim())};
+                double[] iterCoeffs = {
+                        ((double)this.rIterSlider.getValue())/1000.0,
+                        ((double)this.gIterSlider.getValue())/1000.0,
+                        ((double)this.bIterSlider.getValue())/1000.0};
+                boolean nebulaEnabled = this.nebulaModeSelected;
+                boolean importanceSamplingEnabled = this.importanceSamplingSelected;
+                HistogramPrecision precision = (HistogramPrecision) this.precisionBox.getSelectedItem();
+                boolean exposureEnabled = this.exposureSelected;
+                int exposureBatches = Integer.parseInt(this.exposureBatchesField.getText().trim());
+                fractalViewer.updateFractal(f -> {
+                    BhuddabrotFractal bhuddabrot = (BhuddabrotFractal) f;
+                    bhuddabrot.setNumRandomPoints(numRandomPoints);
+                    for (int i = 0; i < 3; i++) {
+                        bhuddabrot.setPointCoeff(i, pointCoeffs[i]);
+                        bhuddabrot.setIterCoeff(i, iterCoeffs[i]);
+                    }
+                    if (nebulaEnabled != bhuddabrot.getNebulaEnabled()) {
+                        bhuddabrot.toggleNebulaEnabled();
+                    }
+                    if (importanceSamplingEnabled != bhuddabrot.getImportanceSamplingEnabled()) {
+                        bhuddabrot.toggleImportanceSamplingEnabled();
+                    }
+                    bhuddabrot.setHistogramPrecision(precision);
+                    if (exposureEnabled != bhuddabrot.getExposureEnabled()) {
+                        bhuddabrot.toggleExposureEnabled();
+                    }
+                    bhuddabrot.setExposureBatches(exposureBatches);
+                });
             });
 
             panel.add(this.pointBox);
+            panel.add(this.importanceSamplingToggleButton);
+            panel.add(precisionPanel);
+            panel.add(this.exposureToggleButton);
+            panel.add(exposurePanel);
             panel.add(this.nebulaModeToggleButton);
             panel.add(pointCoeffPanel);
             panel.add(this.iterCoeffBox);
@@ -780,26 +1149,44 @@ public class FractalApp {
 
         }
 
-        private void setup() {
-
-        }
-
         private void toggleVisible() {
             this.visible = !this.visible;
         }
 
+        /**
+         * Shows the settings of the fractal taken by the render thread after its last change.
+         */
+        private void showView(ViewState view) {
+            this.view = view;
+            if (this.visible) {
+                update();
+            }
+        }
+
         private void update() {
             this.setLocation(appFrame.getX()+appFrame.getWidth()-this.getWidth()-7, appFrame.getY()+66);
             this.setVisible(this.visible);
 
-            this.nebulaModeSelected = ((BhuddabrotFractal)fractal).getNebulaEnabled();
-            this.pointSlider.setValue(((BhuddabrotFractal)fractal).getNumRandomPoints());
-            this.rPointCoeffField.setText(String.valueOf(((BhuddabrotFractal)fractal).getPointCoeff(0)));
-            this.gPointCoeffField.setText(String.valueOf(((BhuddabrotFractal)fractal).getPointCoeff(1)));
-            this.bPointCoeffField.setText(String.valueOf(((BhuddabrotFractal)fractal).getPointCoeff(2)));
-            this.rIterSlider.setValue((int)(((BhuddabrotFractal)fractal).getIterCoeff(0) * 1000));
-            this.gIterSlider.setValue((int)(((BhuddabrotFractal)fractal).getIterCoeff(1) * 1000));
-            this.bIterSlider.setValue((int)(((BhuddabrotFractal)fractal).getIterCoeff(2) * 1000));
+            BhuddaSettings settings = this.view == null ? null : this.view.bhudda;
+            if (settings == null) {
+                return;
+            }
+
+            this.nebulaModeSelected = settings.nebula;
+            this.nebulaModeToggleButton.setSelected(this.nebulaModeSelected);
+            this.importanceSamplingSelected = settings.importanceSampling;
+            this.importanceSamplingToggleButton.setSelected(this.importanceSamplingSelected);
+            this.precisionBox.setSelectedItem(settings.precision);
+            this.exposureSelected = settings.exposure;
+            this.exposureToggleButton.setSelected(this.exposureSelected);
+            this.exposureBatchesField.setText(String.valueOf(settings.exposureBatches));
+            this.pointSlider.setValue(settings.numRandomPoints);
+            this.rPointCoeffField.setText(String.valueOf(settings.pointCoeffs[0]));
+            this.gPointCoeffField.setText(String.valueOf(settings.pointCoeffs[1]));
+            this.bPointCoeffField.setText(String.valueOf(settings.pointCoeffs[2]));
+            this.rIterSlider.setValue((int)(settings.iterCoeffs[0] * 1000));
+            this.gIterSlider.setValue((int)(settings.iterCoeffs[1] * 1000));
+            this.bIterSlider.setValue((int)(settings.iterCoeffs[2] * 1000));
 
             this.setNebulaInputEnabled();
         }
@@ -822,8 +1209,16 @@ public class FractalApp {
         private int currentDegreeValue;
         private JTextField[][] coeffInputs;
 
-        private NewtonControlWindow() {
-            currentDegreeValue = ((NewtonIterator)fractal.iterator).getF().degree();
+        /**
+         * The polynomial edited, as it was in the view last shown.
+         */
+        private final String polynomial;
+        private final Complex[] coeffs;
+
+        private NewtonControlWindow(ViewState view) {
+            polynomial = view.newtonPolynomial;
+            coeffs = view.newtonCoeffs;
+            currentDegreeValue = coeffs.length - 1;
 
             newtonControlFrame = new JFrame("Change polynomial");
             newtonControlFrame.setSize(400, 400);
@@ -843,13 +1238,13 @@ public class FractalApp {
             coeffInputPane.setLayout(new GridLayout(0, 1));
             coeffInputs = new JTextField[9][2];
 
-            JLabel degreeLabel = new JLabel("Current polynomial: " + ((NewtonIterator)fractal.iterator).getF().toString());
+            JLabel degreeLabel = new JLabel("Current polynomial: " + polynomial);
             coeffInputPane.add(degreeLabel);
 
             for (int i = 0; i <= 8; i++) {
                 if (i <= currentDegreeValue) {
-                    coeffInputs[i][0] = new JTextField(String.valueOf(((NewtonIterator)fractal.iterator).getF().coeff[i].getReal()), 4);
-                    coeffInputs[i][1] = new JTextField(String.valueOf(((NewtonIterator)fractal.iterator).getF().coeff[i].getImag()), 4);
+                    coeffInputs[i][0] = new JTextField(String.valueOf(coeffs[i].getReal()), 4);
+                    coeffInputs[i][1] = new JTextField(String.valueOf(coeffs[i].getImag()), 4);
                 } else {
                     coeffInputs[i][0] = new JTextField("0", 4);
                     coeffInputs[i][1] = new JTextField("0", 4);
@@ -876,15 +1271,16 @@ public class FractalApp {
                     newCoeffs[i] = new Complex(x, y);
                 }
 
-                try {
-                    ((NewtonIterator)(fractal.iterator)).setOrder((new Polynomial(newCoeffs)).degree());
-                    ((NewtonIterator)(fractal.iterator)).setF(new Polynomial(newCoeffs));
-                } catch (NegativeArraySizeException ex) {
-                    ((NewtonIterator)(fractal.iterator)).setF(new Polynomial());
-                }
+                fractalViewer.updateFractal(f -> {
+                    try {
+                        ((NewtonIterator)(f.iterator)).setOrder((new Polynomial(newCoeffs)).degree());
+                        ((NewtonIterator)(f.iterator)).setF(new Polynomial(newCoeffs));
+                    } catch (NegativeArraySizeException ex) {
+                        ((NewtonIterator)(f.iterator)).setF(new Polynomial());
+                    }
 
-                fractal.setupFractal();
-                fractalViewer.updateFractal();
+                    f.setupFractal();
+                });
                 newtonControlFrame.dispose();
             });
 
@@ -0,0 +1,20 @@
+/**
+ * How the counts of a StripedHistogram are stored. INT counts exactly up to Integer.MAX_VALUE
+ * and then saturates; LONG counts exactly but takes twice the memory; FLOAT takes as little as
+ * INT and counts exactly up to 2^24, beyond which passes are added with random rounding to the
+ * nearest representable counts, so the counts stay right on average at any size.
+ */
+enum HistogramPrecision {
+    INT("Integer"), LONG("Long integer"), FLOAT("Floating point");
+
+    private final String label;
+
+    HistogramPrecision(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
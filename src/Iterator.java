@@ -31,6 +31,44 @@ public abstract class Iterator {
 
     Complex c;
 
+    /**
+     * Whether the JDK Vector API (jdk.incubator.vector) can be used in this JVM, which requires
+     * the application to be started with --add-modules jdk.incubator.vector.
+     */
+    static final boolean VECTOR_API_AVAILABLE = isVectorApiPresent();
+
+    /**
+     * Whether iterators with a vectorised kernel should use it in iterateRow. Can be switched
+     * at runtime to compare against the scalar kernel; the system property fractal.vector=false
+     * sets the initial value to false.
+     */
+    boolean vectorisationEnabled = VECTOR_API_AVAILABLE && !"false".equals(System.getProperty("fractal.vector"));
+
+    /**
+     * The tolerance used by escape-time iterators to detect that an orbit has returned to a
+     * previous point, i.e. that the point lies in the interior of the set. Should be well below
+     * the pixel size, so that exterior points slowly leaving a cycle are not mistaken for it.
+     */
+    double cycleTolerance = TOL;
+
+    /**
+     * The number of scratch numbers a double-double kernel may use.
+     */
+    static final int KERNEL_SCRATCH = 5;
+
+    private static final ThreadLocal<DoubleDouble[]> THREAD_DOUBLE_DOUBLES = ThreadLocal.withInitial(() -> {
+        DoubleDouble[] scratch = new DoubleDouble[KERNEL_SCRATCH + 1];
+        for (int k = 0; k < scratch.length; k++) {
+            scratch[k] = new DoubleDouble();
+        }
+        return scratch;
+    });
+
+    /**
+     * The detectors returned by threadCycleDetector, one per thread.
+     */
+    private final ThreadLocal<CycleDetector> threadCycleDetectors = ThreadLocal.withInitial(this::newCycleDetector);
+
 
     // ========================================================
     // Constructor functions.
@@ -93,6 +131,62 @@ public abstract class Iterator {
         return this.c;
     }
 
+    public boolean getVectorisationEnabled() {
+        return this.vectorisationEnabled;
+    }
+
+    /**
+     * Enables or disables the vectorised kernel. Has no effect if the Vector API is unavailable.
+     */
+    public void setVectorisationEnabled(boolean enabled) {
+        this.vectorisationEnabled = enabled && VECTOR_API_AVAILABLE;
+    }
+
+    public double getCycleTolerance() {
+        return this.cycleTolerance;
+    }
+
+    public void setCycleTolerance(double tolerance) {
+        this.cycleTolerance = tolerance;
+    }
+
+    /**
+     * Returns a new cycle detector using this iterator's tolerance.
+     */
+    CycleDetector newCycleDetector() {
+        return new CycleDetector(this.cycleTolerance);
+    }
+
+    /**
+     * Returns the cycle detector of the calling thread, using this iterator's tolerance. The
+     * single point kernels are called once per sample, so they reuse it rather than creating a
+     * detector per point. It is reset by every kernel it is passed to.
+     */
+    CycleDetector threadCycleDetector() {
+        CycleDetector cycle = this.threadCycleDetectors.get();
+        cycle.setTolerance(this.cycleTolerance);
+        return cycle;
+    }
+
+    /**
+     * Returns the scratch numbers of the calling thread. The first KERNEL_SCRATCH are for the
+     * double-double kernels, which never call one another, and the last for the point iterated
+     * by the double-double row methods, which call the kernels. Like the cycle detectors, they
+     * are kept per thread so that no numbers are created per point or per row.
+     */
+    static DoubleDouble[] threadDoubleDoubles() {
+        return THREAD_DOUBLE_DOUBLES.get();
+    }
+
+    private static boolean isVectorApiPresent() {
+        try {
+            Class.forName("jdk.incubator.vector.DoubleVector");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
 
     /**
      * Performs iterative process at a point in the complex plane,
@@ -101,4 +195,145 @@ public abstract class Iterator {
      */
     abstract int[] iterate(Complex p);
 
+    /**
+     * Performs iterative process at the point re + i*im without creating any Complex objects.
+     * Iterators with a primitive kernel override this; the default simply adapts iterate(Complex).
+     *
+     * @param re real part of point in question
+     * @param im imaginary part of point in question
+     * @return the colour number and iteration count packed by packResult
+     */
+    long iterate(double re, double im) {
+        int[] result = iterate(new Complex(re, im));
+        return packResult(result[0], result[1]);
+    }
+
+    /**
+     * Performs iterative process along part of a row of pixels, writing the outputs straight
+     * into the destination arrays. Column i of the row is the point (originRe + i*dRe) + i*im,
+     * and its results are written at index rowOffset + i.
+     *
+     * Escape-time iterators also write the period of the cycle detected for each interior point,
+     * or 0 where none was detected; other iterators write 0.
+     *
+     * @param originRe        real part of the point in column 0 of the row
+     * @param dRe             distance in the complex plane between adjacent columns
+     * @param im              imaginary part shared by every point in the row
+     * @param x               first column to iterate
+     * @param length          number of columns to iterate
+     * @param colorNums       destination for the colour number of each point
+     * @param iterationCounts destination for the iteration count of each point
+     * @param periods         destination for the detected period of each point, or null
+     * @param rowOffset       index in the destination arrays corresponding to column 0
+     */
+    abstract void iterateRow(double originRe, double dRe, double im, int x, int length,
+                             int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset);
+
+    /**
+     * Performs iterative process at every step-th pixel along part of a row: columns x, x + step,
+     * ..., x + (count - 1)*step. Each is the same point, with its results written to the same
+     * place, as in iterateRow. Iterators with a vectorised kernel override this; the default
+     * iterates each column on its own.
+     */
+    void iterateRowSamples(double originRe, double dRe, double im, int x, int step, int count,
+                           int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        for (int k = 0; k < count; k++) {
+            iterateRow(originRe, dRe, im, x + k * step, 1, colorNums, iterationCounts, periods, rowOffset);
+        }
+    }
+
+    /**
+     * Returns true if this iterator has a double-double kernel, i.e. overrides
+     * iterate(DoubleDouble, DoubleDouble, CycleDetector) with an implementation that keeps the
+     * extra precision.
+     */
+    boolean supportsDoubleDouble() {
+        return false;
+    }
+
+    /**
+     * Performs iterative process at the point re + i*im in double-double precision. Neither
+     * argument is modified. The default rounds the point to double.
+     *
+     * @return the colour number and iteration count packed by packResult
+     */
+    long iterate(DoubleDouble re, DoubleDouble im) {
+        return iterate(re, im, threadCycleDetector());
+    }
+
+    /**
+     * Double-double kernel, using the given detector for periodicity checking. The default
+     * rounds the point to double.
+     */
+    long iterate(DoubleDouble re, DoubleDouble im, CycleDetector cycle) {
+        return iterate(re.doubleValue(), im.doubleValue());
+    }
+
+    /**
+     * Double-double equivalent of iterateRow: column i of the row is the point
+     * (originRe + i*dRe) + i*im, evaluated in double-double precision.
+     */
+    void iterateRow(DoubleDouble originRe, double dRe, DoubleDouble im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        iterateRowSamples(originRe, dRe, im, x, 1, length, colorNums, iterationCounts, periods, rowOffset);
+    }
+
+    /**
+     * Double-double equivalent of iterateRowSamples. Every sample is iterated in the same scratch
+     * number and with the same cycle detector, those of the calling thread.
+     */
+    void iterateRowSamples(DoubleDouble originRe, double dRe, DoubleDouble im, int x, int step, int count,
+                           int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        DoubleDouble re = threadDoubleDoubles()[KERNEL_SCRATCH];
+        CycleDetector cycle = threadCycleDetector();
+        long result;
+        int i;
+        for (int k = 0; k < count; k++) {
+            i = x + k * step;
+            cycle.period = 0;
+            result = iterate(re.set(originRe).add(i * dRe), im, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
+            }
+        }
+    }
+
+    // ========================================================
+    // Packed results.
+    // ========================================================
+
+    /**
+     * Packs the two outputs of the iterative process into a single long, so primitive kernels
+     * need not allocate a result array per point.
+     *
+     * @param colorNum      The colour number determined for the point (result[0] of iterate)
+     * @param numIterations The number of iterations needed for the decision (result[1] of iterate)
+     */
+    static long packResult(int colorNum, int numIterations) {
+        return ((long) colorNum << 32) | (numIterations & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the colour number held in a packed result.
+     */
+    static int resultColorNum(long result) {
+        return (int) (result >> 32);
+    }
+
+    /**
+     * Returns the iteration count held in a packed result.
+     */
+    static int resultIterations(long result) {
+        return (int) result;
+    }
+
+    /**
+     * Converts a packed result to the int[] form returned by iterate(Complex).
+     */
+    static int[] unpackResult(long result) {
+        return new int[]{resultColorNum(result), resultIterations(result)};
+    }
+
 }
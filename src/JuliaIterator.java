@@ -8,47 +8,142 @@ public class JuliaIterator extends Iterator {
 
     @Override
     public int[] iterate(Complex p) {
-        int[] result = new int[2];
+        return unpackResult(iterate(p.getReal(), p.getImag()));
+    }
+
+    @Override
+    long iterate(double re, double im) {
+        return iterate(re, im, this.c.getReal(), this.c.getImag(), threadCycleDetector());
+    }
+
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        iterateRowSamples(originRe, dRe, im, x, 1, length, colorNums, iterationCounts, periods, rowOffset);
+    }
+
+    @Override
+    void iterateRowSamples(double originRe, double dRe, double im, int x, int step, int count,
+                           int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        double cRe = this.c.getReal();
+        double cIm = this.c.getImag();
+        CycleDetector cycle = newCycleDetector();
+        long result;
+        int done = 0, i;
+        if (this.vectorisationEnabled && this.power == 2) {
+            done = VectorKernel.juliaRow(originRe, dRe, im, x, step, count, this.maxIterations, this.cycleTolerance,
+                    cRe, cIm, colorNums, iterationCounts, periods, rowOffset);
+        }
+        for (int k = done; k < count; k++) {
+            i = x + k * step;
+            result = iterate(originRe + i * dRe, im, cRe, cIm, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
+            }
+        }
+    }
+
+    /**
+     * Primitive Julia kernel: iterates z -> z^power + c from z = zRe + i*zIm using plain doubles,
+     * stopping early if the cycle detector finds the orbit is periodic.
+     *
+     * @return the colour number (1 if escaped, 0 otherwise) and iteration count, packed by packResult
+     */
+    private long iterate(double zRe, double zIm, double cRe, double cIm, CycleDetector cycle) {
+        int n = 1;
+        double power = this.power;
+        double temp, arg, magnitude;
 
-        Complex z_n = new Complex(p.getReal(), p.getImag());
-        result[1] = 1;
+        cycle.reset(zRe, zIm);
 
-        if (this.power == Math.floor(power)) {
+        if (power == Math.floor(power)) {
 
-            while (result[1] < this.maxIterations && z_n.abs2() < 4) {
+            while (n < this.maxIterations && zRe * zRe + zIm * zIm < 4) {
 
-                for (int k=1; k<this.power; k++) {
-                    z_n = z_n.multiply(z_n);
+                for (int k=1; k<power; k++) {
+                    temp = zRe * zRe - zIm * zIm;
+                    zIm = 2 * zRe * zIm;
+                    zRe = temp;
                 }
 
-                z_n = z_n.add(this.getC());
+                zRe += cRe;
+                zIm += cIm;
 
-                result[1] ++;
-            }
-            if (result[1] == this.maxIterations) {
-                result[0] = 0;
-            }
-            else {
-                result[0] = 1;
+                n ++;
+
+                if (cycle.isPeriodic(zRe, zIm)) {
+                    return packResult(0, this.maxIterations);
+                }
             }
 
         }
         else {
-            while (result[1] < this.maxIterations && z_n.abs2() < 4) {
+            while (n < this.maxIterations && zRe * zRe + zIm * zIm < 4) {
 
-                z_n = z_n.pow(this.getPower()).add(this.getC());
+                if (zRe != 0.0 || zIm != 0.0) {
+                    arg = Math.atan2(zIm, zRe);
+                    magnitude = Math.pow(Math.sqrt(zRe * zRe + zIm * zIm), power);
+                    zRe = magnitude * Math.cos(power * arg);
+                    zIm = magnitude * Math.sin(power * arg);
+                }
+
+                zRe += cRe;
+                zIm += cIm;
+
+                n ++;
 
-                result[1] ++;
+                if (cycle.isPeriodic(zRe, zIm)) {
+                    return packResult(0, this.maxIterations);
+                }
             }
-            if (result[1] == this.maxIterations) {
-                result[0] = 0;
+        }
+
+        return packResult(n == this.maxIterations ? 0 : 1, n);
+    }
+
+    /**
+     * Only integer powers have a double-double kernel.
+     */
+    @Override
+    boolean supportsDoubleDouble() {
+        return this.power == Math.floor(this.power);
+    }
+
+    /**
+     * Double-double equivalent of the integer power case of the primitive kernel, working in the
+     * scratch numbers of the calling thread.
+     */
+    @Override
+    long iterate(DoubleDouble re, DoubleDouble im, CycleDetector cycle) {
+        if (!supportsDoubleDouble()) {
+            return iterate(re.doubleValue(), im.doubleValue(), this.c.getReal(), this.c.getImag(), cycle);
+        }
+
+        int n = 1;
+        double power = this.power;
+        double cRe = this.c.getReal();
+        double cIm = this.c.getImag();
+        DoubleDouble[] scratch = threadDoubleDoubles();
+        DoubleDouble zRe = scratch[0].set(re), zIm = scratch[1].set(im), temp = scratch[2];
+
+        cycle.reset(zRe, zIm);
+
+        while (n < this.maxIterations && zRe.hi * zRe.hi + zIm.hi * zIm.hi < 4) {
+            for (int k=1; k<power; k++) {
+                temp.set(zIm).square();
+                zIm.multiply(zRe).twice();
+                zRe.square().subtract(temp);
             }
-            else {
-                result[0] = 1;
+            zRe.add(cRe);
+            zIm.add(cIm);
+            n ++;
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, this.maxIterations);
             }
         }
-
-        return result;
+        return packResult(n == this.maxIterations ? 0 : 1, n);
     }
 
     public static void main(String[] args) {
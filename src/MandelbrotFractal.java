@@ -1,7 +1,39 @@
 import java.awt.*;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.ForkJoinPool;
 
 class MandelbrotFractal extends Fractal {
 
+    /**
+     * Relative pixel size (dz / max(|centre|, 1)) below which the deep zoom renderer is used: the
+     * limit of double-double iteration, or of plain double iteration if double-double is disabled.
+     */
+    static final double DEEP_ZOOM_THRESHOLD = DOUBLE_DOUBLE_LIMIT;
+
+    /**
+     * The maximum number of reference orbits computed per frame when correcting glitches.
+     */
+    static final int MAX_REFERENCES = 16;
+
+    /**
+     * The real and imaginary parts of the centre, to arbitrary precision. this.centre holds
+     * the nearest double values.
+     */
+    private BigDecimal centreRe, centreIm;
+
+    private boolean deepZoomEnabled = true;
+
+    private boolean seriesApproximationEnabled = true;
+
+    /**
+     * True while the current frame is rendered by perturbation. origin is then the offset of the
+     * top-left pixel from the centre rather than a point in the complex plane.
+     */
+    private boolean deepZoomActive;
+
+    private final MandelbrotIterator mandelbrotIterator;
+
     /**
      * Constructor function which initialises the instance variables and
      * sets up fractal
@@ -18,8 +50,288 @@ class MandelbrotFractal extends Fractal {
         this.colors[1]     = Color.YELLOW;
         this.colors[2]     = Color.BLUE;
         this.colorStyle = col;
-        this.iterator = new MandelbrotIterator(this.maxIterations);
+        this.mandelbrotIterator = new MandelbrotIterator(this.maxIterations);
+        this.iterator = this.mandelbrotIterator;
         this.iterator.setOrder(2);
+        this.centreRe = new BigDecimal(centre.getReal());
+        this.centreIm = new BigDecimal(centre.getImag());
+    }
+
+    // ========================================================
+    // Accessor and mutator methods
+    // ========================================================
+
+    public boolean getDeepZoomEnabled() {
+        return this.deepZoomEnabled;
+    }
+
+    public void toggleDeepZoomEnabled() {
+        this.deepZoomEnabled = !this.deepZoomEnabled;
+    }
+
+    public boolean getSeriesApproximationEnabled() {
+        return this.seriesApproximationEnabled;
+    }
+
+    public void toggleSeriesApproximationEnabled() {
+        this.seriesApproximationEnabled = !this.seriesApproximationEnabled;
+    }
+
+    @Override
+    public void setCentre(Complex centre) {
+        setCentre(centre.getReal(), centre.getImag());
+    }
+
+    @Override
+    public void setCentre(double x, double y) {
+        super.setCentre(x, y);
+        this.centreRe = new BigDecimal(x);
+        this.centreIm = new BigDecimal(y);
+    }
+
+    @Override
+    public void setCentre(BigDecimal x, BigDecimal y) {
+        super.setCentre(x, y);
+        this.centreRe = x;
+        this.centreIm = y;
+    }
+
+    @Override
+    public String getCentreRealString() {
+        return this.centreRe.toString();
+    }
+
+    @Override
+    public String getCentreImagString() {
+        return this.centreIm.toString();
+    }
+
+    // ========================================================
+    // Deep zoom rendering
+    // ========================================================
+
+    /**
+     * Sets up the fractal image. If the pixels are too small to resolve even in double-double
+     * precision, also computes a reference orbit at the centre and switches to perturbation iteration.
+     */
+    @Override
+    public void setupFractal() {
+
+        this.iterator = this.mandelbrotIterator;
+        this.mandelbrotIterator.setMaxIterations(this.maxIterations);
+
+        super.setupFractal();
+
+        double scale = Math.max(Math.max(Math.abs(centre.getReal()), Math.abs(centre.getImag())), 1.0);
+        double threshold = getDoubleDoubleEnabled() ? DEEP_ZOOM_THRESHOLD : DOUBLE_DOUBLE_THRESHOLD;
+        this.deepZoomActive = this.deepZoomEnabled && this.dz < threshold * scale;
+
+        if (this.deepZoomActive) {
+            this.doubleDoubleActive = false;
+            long t1 = System.currentTimeMillis();
+
+            ReferenceOrbit orbit = new ReferenceOrbit(centreRe, centreIm, this.maxIterations, ReferenceOrbit.precisionFor(this.dz));
+            double centreX = 0.5 * this.imageWidth - 0.5;
+            double centreY = 0.5 * this.imageHeight - 0.5;
+            this.iterator = createPerturbationIterator(orbit, centreX, centreY, 0, 0, this.imageWidth, this.imageHeight);
+
+            this.origin.setReal(-(this.dz * centreX));
+            this.origin.setImag(this.dz * centreY);
+
+            System.out.println("Reference orbit time: " + (System.currentTimeMillis()-t1) + " (length " + orbit.length + ")");
+        }
+    }
+
+    /**
+     * Creates a perturbation iterator for the given reference orbit, located at pixel (refX, refY).
+     * If series approximation is enabled, the series is validated over the given rectangle of
+     * pixels, which every pixel iterated against this reference must lie within.
+     */
+    private PerturbationIterator createPerturbationIterator(ReferenceOrbit orbit, double refX, double refY,
+                                                            int x, int y, int width, int height) {
+        PerturbationIterator perturbationIterator = new PerturbationIterator(orbit, this.maxIterations);
+
+        if (this.seriesApproximationEnabled) {
+            long t1 = System.currentTimeMillis();
+            // Include a margin of one pixel for supersampling
+            double[] probes = SeriesApproximation.rectangleProbes(refX, refY, x - 1, y - 1, width + 2, height + 2, this.dz);
+            SeriesApproximation series = new SeriesApproximation(orbit, probes, this.dz, this.maxIterations);
+            perturbationIterator.setSeriesApproximation(series);
+            System.out.println("Series approximation time: " + (System.currentTimeMillis()-t1) + " (skipping " + series.skipIterations + " iterations)");
+        }
+        return perturbationIterator;
+    }
+
+    /**
+     * Perturbation results are relative to the reference orbits of their own frame.
+     */
+    @Override
+    boolean frameReusable() {
+        return !this.deepZoomActive;
+    }
+
+    /**
+     * Glitched pixels are corrected before the region is finished, so that they are neither
+     * taken for edges nor left out of supersampling.
+     */
+    @Override
+    void correctRegion(ForkJoinPool pool, int x, int y, int width, int height) {
+        if (this.deepZoomActive && !isRenderCancelled()) {
+            correctGlitches(pool, x, y, width, height);
+        }
+    }
+
+    @Override
+    public void toggleVectorisationEnabled() {
+        this.mandelbrotIterator.setVectorisationEnabled(!this.mandelbrotIterator.getVectorisationEnabled());
+    }
+
+    @Override
+    public boolean getVectorisationEnabled() {
+        return this.mandelbrotIterator.getVectorisationEnabled();
+    }
+
+    @Override
+    public void setMaxIterations(int maxIterations) {
+        super.setMaxIterations(maxIterations);
+        this.mandelbrotIterator.setMaxIterations(maxIterations);
+    }
+
+    /**
+     * Translates the image. The precise centre is moved by the same amount; in deep zoom the
+     * whole frame is re-rendered, since newly exposed pixels may need their own references.
+     */
+    @Override
+    public void translateFractal(int dX, int dY) {
+        BigDecimal step = new BigDecimal(this.dz);
+        this.centreRe = this.centreRe.subtract(step.multiply(BigDecimal.valueOf(dX)));
+        this.centreIm = this.centreIm.add(step.multiply(BigDecimal.valueOf(dY)));
+
+        if (this.deepZoomActive) {
+            super.setCentre(this.centreRe, this.centreIm);
+            createFractal();
+        } else {
+            super.translateFractal(dX, dY);
+        }
+    }
+
+    /**
+     * Moves the precise centre by the same amount, as translateFractal does.
+     */
+    @Override
+    public void moveCentre(int dX, int dY) {
+        BigDecimal step = new BigDecimal(this.dz);
+        this.centreRe = this.centreRe.subtract(step.multiply(BigDecimal.valueOf(dX)));
+        this.centreIm = this.centreIm.add(step.multiply(BigDecimal.valueOf(dY)));
+        super.setCentre(this.centreRe, this.centreIm);
+    }
+
+    /**
+     * Re-iterates the pixels of a rectangle of the image marked as glitched by the perturbation
+     * iterator against new reference orbits, each centred on a glitched pixel, until none remain
+     * or MAX_REFERENCES is reached. Any pixels still glitched are then iterated against the
+     * original reference without glitch detection. The pixels of each pass are shared between
+     * the threads of the given pool, in bands of rows.
+     */
+    private void correctGlitches(ForkJoinPool pool, int x, int y, int width, int height) {
+
+        long t1 = System.currentTimeMillis();
+        PerturbationIterator primaryIterator = (PerturbationIterator) this.iterator;
+        MathContext mc = ReferenceOrbit.precisionFor(this.dz);
+        int[] glitched = new int[width * height];
+        int numGlitched, references = 1, index;
+
+        while (true) {
+
+            numGlitched = 0;
+            for (int j = y; j < y + height; j++) {
+                for (int i = x; i < x + width; i++) {
+                    index = j*imageWidth + i;
+                    if (pixelColorNums[index] == PerturbationIterator.GLITCHED) {
+                        glitched[numGlitched++] = index;
+                    }
+                }
+            }
+
+            if (numGlitched == 0 || references > MAX_REFERENCES || isRenderCancelled()) {
+                break;
+            }
+
+            // Use the glitched pixel closest to the centroid of all glitched pixels as the new reference
+            double meanX = 0, meanY = 0;
+            int minX = imageWidth, minY = imageHeight, maxX = 0, maxY = 0;
+            for (int k = 0; k < numGlitched; k++) {
+                meanX += glitched[k] % imageWidth;
+                meanY += glitched[k] / imageWidth;
+                minX = Math.min(minX, glitched[k] % imageWidth);
+                maxX = Math.max(maxX, glitched[k] % imageWidth);
+                minY = Math.min(minY, glitched[k] / imageWidth);
+                maxY = Math.max(maxY, glitched[k] / imageWidth);
+            }
+            meanX /= numGlitched;
+            meanY /= numGlitched;
+
+            int referenceIndex = glitched[0];
+            double distance, bestDistance = Double.MAX_VALUE;
+            for (int k = 0; k < numGlitched; k++) {
+                distance = Math.pow(glitched[k] % imageWidth - meanX, 2) + Math.pow(glitched[k] / imageWidth - meanY, 2);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    referenceIndex = glitched[k];
+                }
+            }
+
+            int refX = referenceIndex % imageWidth;
+            int refY = referenceIndex / imageWidth;
+            BigDecimal step = new BigDecimal(this.dz);
+            BigDecimal refRe = centreRe.add(step.multiply(BigDecimal.valueOf(refX - (0.5 * imageWidth - 0.5))), mc);
+            BigDecimal refIm = centreIm.subtract(step.multiply(BigDecimal.valueOf(refY - (0.5 * imageHeight - 0.5))), mc);
+
+            PerturbationIterator referenceIterator = createPerturbationIterator(new ReferenceOrbit(refRe, refIm, this.maxIterations, mc),
+                    refX, refY, minX, minY, maxX - minX + 1, maxY - minY + 1);
+            references++;
+
+            final int left = minX, right = maxX;
+            runInBands(pool, minY, maxY - minY + 1, (bandY, bandHeight) ->
+                    iterateGlitched(referenceIterator, left, right, bandY, bandHeight, refX, refY));
+
+            // The reference pixel itself can never glitch against its own orbit, so every pass makes progress
+        }
+
+        if (numGlitched > 0 && !isRenderCancelled()) {
+            primaryIterator.setGlitchDetectionEnabled(false);
+            double centreX = 0.5 * imageWidth - 0.5;
+            double centreY = 0.5 * imageHeight - 0.5;
+            runInBands(pool, y, height, (bandY, bandHeight) ->
+                    iterateGlitched(primaryIterator, x, x + width - 1, bandY, bandHeight, centreX, centreY));
+            primaryIterator.setGlitchDetectionEnabled(true);
+        }
+
+        System.out.println("Glitch correction time: " + (System.currentTimeMillis()-t1) + " (" + references + " references, " + numGlitched + " unresolved)");
+    }
+
+    /**
+     * Iterates the glitched pixels in columns left to right of rows bandY to
+     * bandY + bandHeight - 1 as offsets from the reference pixel (refX, refY).
+     */
+    private void iterateGlitched(PerturbationIterator referenceIterator, int left, int right,
+                                 int bandY, int bandHeight, double refX, double refY) {
+        int index;
+        long result;
+        for (int j = bandY; j < bandY + bandHeight; j++) {
+            if (isRenderCancelled()) {
+                return;
+            }
+            for (int i = left; i <= right; i++) {
+                index = j*imageWidth + i;
+                if (pixelColorNums[index] != PerturbationIterator.GLITCHED) {
+                    continue;
+                }
+                result = referenceIterator.iterate((i - refX) * dz, -(j - refY) * dz);
+                pixelColorNums[index] = Iterator.resultColorNum(result);
+                iterationCounts[index] = Iterator.resultIterations(result);
+            }
+        }
     }
 
     // ========================================================
@@ -31,4 +343,4 @@ class MandelbrotFractal extends Fractal {
         f.createFractal();
         f.saveFractal("fractalImage-light.png");
     }
-}
\ No newline at end of file
+}
@@ -51,80 +51,158 @@ class MandelbrotIterator extends Iterator{
      */
 
     public int[] iterate(Complex p) {
-        int result[] = new int[2];
-        result[0] = 0;
-        result[1] = 1;
-        Complex z_n = new Complex(0,0);
-        Complex z_n_temp = new Complex();
-        //Complex c = new Complex(p.getReal(), p.getImag());
+        return unpackResult(iterate(p.getReal(), p.getImag(), this.maxIterations, threadCycleDetector()));
+    }
+
+
+    /*
+    Reimplementation of iteration method allowing for management of maximum number of iterations on a case-by-case basis
+     - for use in generating bhuddabrot fractals in nebula mode
+     */
+    public int[] iterate(Complex p, int maxIterations) {
+        return unpackResult(iterate(p.getReal(), p.getImag(), maxIterations, threadCycleDetector()));
+    }
+
+    @Override
+    long iterate(double x, double y) {
+        return iterate(x, y, this.maxIterations, threadCycleDetector());
+    }
 
-        double x = p.getReal();
-        double y = p.getImag();
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        iterateRowSamples(originRe, dRe, im, x, 1, length, colorNums, iterationCounts, periods, rowOffset);
+    }
+
+    @Override
+    void iterateRowSamples(double originRe, double dRe, double im, int x, int step, int count,
+                           int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        int maxIterations = this.maxIterations;
+        CycleDetector cycle = newCycleDetector();
+        long result;
+        int done = 0, i;
+        if (this.vectorisationEnabled) {
+            done = VectorKernel.mandelbrotRow(originRe, dRe, im, x, step, count, maxIterations, this.cycleTolerance,
+                    colorNums, iterationCounts, periods, rowOffset);
+        }
+        for (int k = done; k < count; k++) {
+            i = x + k * step;
+            result = iterate(originRe + i * dRe, im, maxIterations, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
+            }
+        }
+    }
+
+    /**
+     * Primitive Mandelbrot kernel: applies the iterative process to the point x + iy using
+     * plain doubles, so no objects are created per iteration.
+     *
+     * @param x             The real part of the starting point
+     * @param y             The imaginary part of the starting point
+     * @param maxIterations The maximum number of iterations to apply
+     * @param cycle         Detects periodic orbits; its period is set for interior points
+     * @return the colour number (1 if escaped, 0 otherwise) and iteration count, packed by packResult
+     */
+    final long iterate(double x, double y, int maxIterations, CycleDetector cycle) {
 
         double a = (x - 0.25) * (x - 0.25) + y * y;
         double b = a * (a + (x - 0.25));
         double c = (x + 1) * (x + 1) + y * y;
 
+        cycle.reset(0, 0);
+
         if ((b < (0.25 * y * y)) || (c < 0.0625)) {  // Checking whether point lies within main cardiod bulb or period 2 bulb parameterised by b=0.15 and c=0.0625 respectively
+            cycle.period = (b < (0.25 * y * y)) ? 1 : 2;
+            return packResult(0, 1);
         }
-        else for (int n = 1; n <= this.maxIterations; n++) {
-            result[1] = n;
 
-            if (z_n.abs2() > 4) {
-                result[0] = 1;
-                break;
+        double zRe = 0, zIm = 0, zRe2 = 0, zIm2 = 0;
+        double newRe, newIm, dRe, dIm;
+
+        for (int n = 1; n <= maxIterations; n++) {
+
+            if (zRe2 + zIm2 > 4) {
+                return packResult(1, n);
             }
 
-            z_n_temp.setReal(z_n.getReal());
-            z_n_temp.setImag(z_n.getImag());
-            z_n = z_n.multiply(z_n).add(p);
-            if (z_n_temp.add(z_n.minus()).abs2() <= TOL*TOL) {
-                break;
+            newIm = 2 * zRe * zIm + y;
+            newRe = zRe2 - zIm2 + x;
+            dRe = zRe - newRe;
+            dIm = zIm - newIm;
+            zRe = newRe;
+            zIm = newIm;
+            zRe2 = zRe * zRe;
+            zIm2 = zIm * zIm;
+
+            if (dRe * dRe + dIm * dIm <= TOL*TOL) {
+                cycle.period = 1;
+                return packResult(0, n);
+            }
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, Math.max(maxIterations, 1));
             }
         }
-        return result;
-
+        return packResult(0, Math.max(maxIterations, 1));
     }
 
+    @Override
+    boolean supportsDoubleDouble() {
+        return true;
+    }
 
-    /*
-    Reimplementation of iteration method allowing for management of maximum number of iterations on a case-by-case basis
-     - for use in generating bhuddabrot fractals in nebula mode
+    /**
+     * Double-double Mandelbrot kernel, following the same steps as iterate(x, y, maxIterations, cycle).
+     * The escape and convergence tests only need the leading parts. Works in the scratch numbers
+     * of the calling thread.
      */
-    public int[] iterate(Complex p, int maxIterations) {
-        int result[] = new int[2];
-        result[0] = 0;
-        result[1] = 1;
-        Complex z_n = new Complex(0,0);
-        Complex z_n_temp = new Complex();
-        //Complex c = new Complex(p.getReal(), p.getImag());
-
-        double x = p.getReal();
-        double y = p.getImag();
+    @Override
+    long iterate(DoubleDouble x, DoubleDouble y, CycleDetector cycle) {
+
+        int maxIterations = this.maxIterations;
+        DoubleDouble[] scratch = threadDoubleDoubles();
+        DoubleDouble q = scratch[0].set(x).add(-0.25);
+        DoubleDouble y2 = scratch[1].set(y).square();
+        DoubleDouble a = scratch[2].set(q).square().add(y2);
+        DoubleDouble b = scratch[3].set(a).add(q).multiply(a);
+        DoubleDouble c = scratch[4].set(x).add(1).square().add(y2);
+
+        cycle.reset(0, 0);
+
+        if ((b.hi < 0.25 * y2.hi) || (c.hi < 0.0625)) {
+            cycle.period = (b.hi < 0.25 * y2.hi) ? 1 : 2;
+            return packResult(0, 1);
+        }
 
-        double a = (x - 0.25) * (x - 0.25) + y * y;
-        double b = a * (a + (x - 0.25));
-        double c = (x + 1) * (x + 1) + y * y;
+        DoubleDouble zRe = q.set(0), zIm = a.set(0), zRe2 = b.set(0), zIm2 = c.set(0);
+        double dRe, dIm;
 
-        if ((b < (0.25 * y * y)) || (c < 0.0625)) {  // Checking whether point lies within main cardiod bulb or period 2 bulb parameterised by b=0.15 and c=0.0625 respectively
-        }
-        else for (int n = 1; n <= maxIterations; n++) {
-            result[1] = n;
+        for (int n = 1; n <= maxIterations; n++) {
 
-            if (z_n.abs2() > 4) {
-                result[0] = 1;
-                break;
+            if (zRe2.hi + zIm2.hi > 4) {
+                return packResult(1, n);
             }
 
-            z_n_temp.setReal(z_n.getReal());
-            z_n_temp.setImag(z_n.getImag());
-            z_n = z_n.multiply(z_n).add(p);
-            if (z_n_temp.add(z_n.minus()).abs2() <= TOL*TOL) {
-                break;
+            dRe = zRe.hi;
+            dIm = zIm.hi;
+            zIm.multiply(zRe).twice().add(y);
+            zRe.set(zRe2).subtract(zIm2).add(x);
+            dRe -= zRe.hi;
+            dIm -= zIm.hi;
+            zRe2.set(zRe).square();
+            zIm2.set(zIm).square();
+
+            if (dRe * dRe + dIm * dIm <= TOL*TOL) {
+                cycle.period = 1;
+                return packResult(0, n);
+            }
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, Math.max(maxIterations, 1));
             }
         }
-        return result;
-
+        return packResult(0, Math.max(maxIterations, 1));
     }
 
     // ========================================================
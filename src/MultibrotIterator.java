@@ -28,37 +28,68 @@ public class MultibrotIterator extends Iterator {
      */
 
     public int[] iterate(Complex p) {
-        int[] result = new int[2];
-        Complex z_n = new Complex(0,0);
-        Complex z_n_temp = new Complex();
-        Complex c = new Complex(p.getReal(), p.getImag());
+        return unpackResult(iterate(p.getReal(), p.getImag()));
+    }
+
+    /**
+     * Primitive Multibrot kernel: applies the iterative process to the point x + iy using
+     * plain doubles, raising to a real power in polar form exactly as Complex.pow does.
+     *
+     * @return the colour number (1 if escaped, 0 otherwise) and iteration count, packed by packResult
+     */
+    @Override
+    long iterate(double x, double y) {
+        return iterate(x, y, threadCycleDetector());
+    }
+
+    private long iterate(double x, double y, CycleDetector cycle) {
+        double power = this.power;
+        double zRe = 0, zIm = 0;
+        double tempRe, tempIm, arg, magnitude, dRe, dIm;
 
-        /**
-         * if (p.abs2() <= (double)1/16) {
-         *             err = 0;
-         *         }
-         *         else
-         */
+        cycle.reset(0, 0);
 
         for (int n = 1; n <= this.maxIterations; n++) {
-            result[1] = n;
-            result[0] = 0;
 
-            if (z_n.abs2() > 4) {
-                result[0] = 1;
-                break;
+            if (zRe * zRe + zIm * zIm > 4) {
+                return packResult(1, n);
             }
-            z_n_temp.setReal(z_n.getReal());
-            z_n_temp.setImag(z_n.getImag());
-            z_n = z_n.pow(this.power).add(c);
-            //z_n = z_n.multiply(z_n.multiply(z_n)).add(c);
-            if (z_n_temp.add(z_n.minus()).abs2() <= TOL * TOL) {
-                //result[0] = 0;
-                break;
+            tempRe = zRe;
+            tempIm = zIm;
+            if (zRe != 0.0 || zIm != 0.0) {
+                arg = Math.atan2(zIm, zRe);
+                magnitude = Math.pow(Math.sqrt(zRe * zRe + zIm * zIm), power);
+                zRe = magnitude * Math.cos(power * arg);
+                zIm = magnitude * Math.sin(power * arg);
+            }
+            zRe += x;
+            zIm += y;
+            dRe = tempRe - zRe;
+            dIm = tempIm - zIm;
+            if (dRe * dRe + dIm * dIm <= TOL * TOL) {
+                cycle.period = 1;
+                return packResult(0, n);
+            }
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, this.maxIterations);
+            }
+        }
+        return packResult(0, this.maxIterations);
+    }
+
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        CycleDetector cycle = newCycleDetector();
+        long result;
+        for (int i = x; i < x + length; i++) {
+            result = iterate(originRe + i * dRe, im, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
             }
-            //result[0] = 0;
         }
-        return result;
     }
 
     public static void main(String[] args) {
@@ -1,8 +1,4 @@
-import java.awt.*;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinTask;
 
 public class NebulaBrotFractal extends BhuddabrotFractal{
 
@@ -26,19 +22,24 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
         long t1 = System.currentTimeMillis();
 
         /*
-        Setup array for 3 color channels of fractal image
-        channels[0] = red channel, channels[1] = green channel, channels[2] = blue channel
+        Setup histograms for 3 color channels of fractal image
+        channel 0 = red channel, channel 1 = green channel, channel 2 = blue channel
          */
-        channels = new int[3][this.fractalPixels.length];
+        StripedHistogram passes = new StripedHistogram(getHistogramPrecision(), 3, this.fractalPixels.length);
+        StripedHistogram.Writer writer = passes.newWriter();
 
         int numIterations, pixelIndex;
-        Complex c, z_n;
-        ArrayList<Complex> escapingPoints = new ArrayList<>();
+        double cRe, cIm, zRe, zIm, temp;
+        Complex z_n = new Complex();
         boolean neverEntersImage;
-        int k = randomStartingPoints.length / 3;//(escapingPoints.size() / 4);
+        int k = pointReals.length / 3;//(escapingPoints.size() / 4);
         int neverEntersCount = 0;
+        int escapeCount = 0;
 
-        for (int i = 0; i < randomStartingPoints.length; i++) {
+        MandelbrotIterator mandelbrotIterator = (MandelbrotIterator) iterator;
+        CycleDetector cycle = mandelbrotIterator.newCycleDetector();
+
+        for (int i = 0; i < pointReals.length; i++) {
 
             neverEntersImage = true;
 
@@ -51,27 +52,31 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
             }
              */
 
-            if (iterator.iterate(randomStartingPoints[i])[0] == 0) {
-                randomStartingPoints[i] = null;
+            if (Iterator.resultColorNum(mandelbrotIterator.iterate(pointReals[i], pointImags[i], maxIterations, cycle)) == 0) {
+                pointReals[i] = Double.NaN;
             } else {
-                c = randomStartingPoints[i];
-                escapingPoints.add(c);
+                cRe = pointReals[i];
+                cIm = pointImags[i];
+                escapeCount ++;
                 numIterations = 1;
-                z_n = new Complex(c.getReal(), c.getImag());
+                zRe = cRe;
+                zIm = cIm;
 
                 while (numIterations < maxIterations) {
 
+                    z_n.setReal(zRe);
+                    z_n.setImag(zIm);
+
                     if (isPointInImage(z_n)) {
 
                         neverEntersImage = false;
 
                         pixelIndex = getPixelIndex(z_n);
-                        iterationCounts[pixelIndex] ++;
 
                         if (i < k) {
 
                             if (numIterations < redIterCoeff*maxIterations) {
-                                channels[0][pixelIndex] += 1;
+                                writer.add(0, pixelIndex, 1);
                             }
 
                         }else {
@@ -79,13 +84,13 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
                             if (i < 2*k) {
 
                                 if (numIterations < greenIterCoeff*maxIterations) {
-                                    channels[1][pixelIndex] += 1;
+                                    writer.add(1, pixelIndex, 1);
                                 }
 
                             }else {
 
                                 if (numIterations < blueIterCoeff*maxIterations) {
-                                    channels[2][pixelIndex] += 1;
+                                    writer.add(2, pixelIndex, 1);
                                 }
                             }
 
@@ -93,16 +98,18 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
 
                     }
 
-                    if (z_n.abs2() > 4) {
+                    if (zRe*zRe + zIm*zIm > 4) {
                         break;
                     }
 
                     numIterations ++;
-                    z_n = z_n.multiply(z_n).add(c);
+                    temp = zRe*zRe - zIm*zIm + cRe;
+                    zIm = 2*zRe*zIm + cIm;
+                    zRe = temp;
                 }
 
                 if (neverEntersImage) {
-                    randomStartingPoints[i] = null;
+                    pointReals[i] = Double.NaN;
                     neverEntersCount ++;
                 }
 
@@ -111,6 +118,8 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
 
         }
 
+        writer.flush();
+
         //randomStartingPoints = null;
 
         /*
@@ -167,43 +176,21 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
         }
          */
 
-        System.out.println("No. escaping points: " + escapingPoints.size());
+        System.out.println("No. escaping points: " + escapeCount);
         System.out.println("No. never-entering points: " + neverEntersCount);
 
-        escapingPoints.clear();
+        double[] maxima = addChannels(passes);
 
-        // Maximum overall number of passes though a pixel
-        int maxPixelIter = 0;
+        double maxRGBPixelIter = Math.max(maxima[0], Math.max(maxima[1], maxima[2]));
 
-        // Maximum number of passes though a pixel during red, green, and blue channel iterations
-        int maxRedPixelIter = 0;
-        int maxGreenPixelIter = 0;
-        int maxBluePixelIter = 0;
+        System.out.println("Max pixel iterations (r,g,b,total): (" + maxima[0] + ", " + maxima[1] + ", " + maxima[2] + ", " + maxima[3] +")");
 
-        for (int i = 0; i < fractalPixels.length; i++) {
-            maxRedPixelIter = Math.max(channels[0][i], maxRedPixelIter);
-            maxGreenPixelIter = Math.max(channels[1][i], maxGreenPixelIter);
-            maxBluePixelIter = Math.max(channels[2][i], maxBluePixelIter);
-        }
+        long t2 = System.currentTimeMillis();
+        colorChannels(passes, maxRGBPixelIter);
 
-        int maxRGBPixelIter = Math.max(maxRedPixelIter, Math.max(maxGreenPixelIter, maxBluePixelIter));
-
-        for (int i: iterationCounts) {
-            maxPixelIter = Math.max(i, maxPixelIter);
-        }
-
-        System.out.println("Max pixel iterations (r,g,b,total): (" + maxRedPixelIter + ", " + maxGreenPixelIter + ", " + maxBluePixelIter + ", " +maxPixelIter +")");
-
-        float r, g, b;
-
-        for (int i = 0; i < fractalPixels.length; i++) {
-            r = (float)channels[0][i] / (float)maxRGBPixelIter;
-            g = (float)channels[1][i] / (float)maxRGBPixelIter;
-            b = (float)channels[2][i] / (float)maxRGBPixelIter;
-            fractalPixels[i] = new Color(r, g, b).getRGB();
-        }
-
-        System.out.println("Create time: " + (System.currentTimeMillis()-t1));
+        long t3 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t2-t1) + ", colouring time: " + (t3-t2));
+        System.out.println("Create time: " + (t3-t1));
 
     }
 
@@ -217,7 +204,7 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
         Setup array for 3 color channels of fractal image
         channels[0] = red channel, channels[1] = green channel, channels[2] = blue channel
          */
-        channels = new int[3][this.fractalPixels.length];
+        histogram = new StripedHistogram(getHistogramPrecision(), 3, this.fractalPixels.length);
 
         /*
         int k = (getNumRandomPoints() / 4);
@@ -234,96 +221,33 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
             e.printStackTrace();
         }
 
-        //randomStartingPoints = null;
+        StripedHistogram passes = histogram;
+        histogram = null;
 
-        // Maximum overall number of passes though a pixel
-        int maxPixelIter = 0;
-
-        // Maximum number of passes though a pixel during red, green, and blue channel iterations
-        int maxRedPixelIter = 0;
-        int maxGreenPixelIter = 0;
-        int maxBluePixelIter = 0;
-
-        for (int i = 0; i < fractalPixels.length; i++) {
-            maxRedPixelIter = Math.max(channels[0][i], maxRedPixelIter);
-            maxGreenPixelIter = Math.max(channels[1][i], maxGreenPixelIter);
-            maxBluePixelIter = Math.max(channels[2][i], maxBluePixelIter);
-
-            iterationCounts[i] += (channels[0][i] + channels[1][i] + channels[2][i]);
-            maxPixelIter = Math.max(iterationCounts[i], maxPixelIter);
-        }
+        //randomStartingPoints = null;
 
-        int maxRGBPixelIter = Math.max(maxRedPixelIter, Math.max(maxGreenPixelIter, maxBluePixelIter));
+        double[] maxima = addChannels(passes);
 
-        System.out.println("Max pixel iterations (r,g,b,total): (" + maxRedPixelIter + ", " + maxGreenPixelIter + ", " + maxBluePixelIter + ", " + maxPixelIter +")");
+        double maxRGBPixelIter = Math.max(maxima[0], Math.max(maxima[1], maxima[2]));
 
-        float r, g, b;
+        System.out.println("Max pixel iterations (r,g,b,total): (" + maxima[0] + ", " + maxima[1] + ", " + maxima[2] + ", " + maxima[3] +")");
 
-        for (int i = 0; i < fractalPixels.length; i++) {
-            r = (float)channels[0][i] / (float)maxRGBPixelIter;
-            g = (float)channels[1][i] / (float)maxRGBPixelIter;
-            b = (float)channels[2][i] / (float)maxRGBPixelIter;
-            fractalPixels[i] = new Color(r, g, b).getRGB();
-        }
+        long t2 = System.currentTimeMillis();
+        colorChannels(passes, maxRGBPixelIter);
 
-        System.out.println("Create time: " + (System.currentTimeMillis()-t1));
+        long t3 = System.currentTimeMillis();
+        System.out.println("Iteration time: " + (t2-t1) + ", colouring time: " + (t3-t2));
+        System.out.println("Create time: " + (t3-t1));
 
     }
 
     void renderChannel(int channelCoeff, int start, int numPoints) {
 
-        int numIterations, pixelIndex;
-        Complex c, z_n;
-        boolean neverEntersImage;
-
-        int [] result;
-
-        int neverEntersCount = 0;
-        int escapeCount = 0;
-
-        for (int i=start; i<start+numPoints; i++) {
-
-            neverEntersImage = true;
+        // Each thread traces one channel, whatever channel its points would otherwise be in
+        int[] targetChannels = {channelCoeff, channelCoeff, channelCoeff};
+        int[] limits = {maxIterations, maxIterations, maxIterations};
 
-            result = iterator.iterate(randomStartingPoints[i]);
-
-            if (result[0] == 0) {
-                randomStartingPoints[i] = null;
-            } else {
-                c = randomStartingPoints[i];
-                escapeCount ++;
-                numIterations = 1;
-                z_n = new Complex(c.getReal(), c.getImag());
-
-                while (numIterations < maxIterations) {
-
-                    if (isPointInImage(z_n)) {
-
-                        neverEntersImage = false;
-
-                        pixelIndex = getPixelIndex(z_n);
-                        channels[channelCoeff][pixelIndex] ++;
-
-                    }
-
-                    if (z_n.abs2() > 4) {
-                        break;
-                    }
-
-                    numIterations ++;
-                    z_n = z_n.multiply(z_n).add(c);
-                }
-
-                if (neverEntersImage) {
-                    randomStartingPoints[i] = null;
-                    neverEntersCount ++;
-                }
-            }
-
-        }
-
-        System.out.println("No escaping points("+channelCoeff+"): " + escapeCount);
-        System.out.println("No never-entering points("+channelCoeff+"): " + neverEntersCount);
+        traceStartingPoints(channelCoeff, start, numPoints, histogram, targetChannels, limits);
 
     }
 
@@ -335,29 +259,22 @@ public class NebulaBrotFractal extends BhuddabrotFractal{
 
         public void render() throws InterruptedException {
 
-            numThreads=3;
-            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") of " +getNumRandomPoints() + " points with " + numThreads + " threads...");
+            // One section per channel, run as tasks in the shared render pool
+            int numSections = 3;
+            System.out.println("Rendering ("+imageWidth+"x"+imageHeight+") of " +getNumRandomPoints() + " points in " + numSections + " sections with " + getNumThreads() + " threads...");
 
-            sectionBorders = new int[numThreads+1];
+            sectionBorders = new int[numSections+1];
             sectionBorders[0] = 0;
-            sectionBorders[numThreads] = getNumRandomPoints();
-            for (int i = 1; i < numThreads; i++) {
-                sectionBorders[i] = i*(getNumRandomPoints()/numThreads);
+            sectionBorders[numSections] = getNumRandomPoints();
+            for (int i = 1; i < numSections; i++) {
+                sectionBorders[i] = i*(getNumRandomPoints()/numSections);
             }
 
-            ExecutorService renderPool = Executors.newFixedThreadPool(numThreads);
-
-            for(int i=0; i<numThreads; i++) {
-                renderPool.execute(createRenderThread(i));
-            }
-
-            renderPool.shutdown();
-
-            try {
-                renderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            ForkJoinTask<?>[] sectionTasks = new ForkJoinTask<?>[numSections];
+            for(int i=0; i<numSections; i++) {
+                sectionTasks[i] = ForkJoinTask.adapt(createRenderThread(i));
             }
+            getRenderPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(sectionTasks)));
         }
 
         public void renderSection(int sectionIndex) {
@@ -35,14 +35,20 @@ class NewtonFractal extends Fractal {
         super.setupFractal();
     }
 
-    public void colorPixel(int x, int y, int ourColor, int numIterations) {
+    /**
+     * Every pixel converges to a root (or fails to), so uniform regions of any colour are filled.
+     */
+    @Override
+    boolean canFillRegion(int colorNum) {
+        return true;
+    }
 
-        if (this.colorStyle == ColorStyle.NO_SHADING) {
-            fractalPixels[y * imageWidth + x] = colors[ourColor].getRGB();
-        }
-        else {
-            fractalPixels[y*imageWidth+x] = colorMap[ourColor][numIterations-1].getRGB();
-        }
+    /**
+     * Every colour number is a root, so all are shaded.
+     */
+    @Override
+    boolean isShaded(int colorNum) {
+        return true;
     }
 
 
@@ -7,6 +7,7 @@ public class NewtonIterator extends Iterator {
         this.fp = f.derivative();
         this.setOrder(this.getF().degree());
         this.roots = new ArrayList<Complex>();
+        cacheCoefficients();
     }
 
     /**
@@ -25,6 +26,12 @@ public class NewtonIterator extends Iterator {
      */
     private ArrayList<Complex> roots;
 
+    /**
+     * The real and imaginary parts of the co-efficients of f and fp, unpacked so that
+     * the primitive kernel can evaluate both polynomials without creating Complex objects.
+     */
+    private double[] fRe, fIm, fpRe, fpIm;
+
     // ========================================================
     // Accessor methods.
     // ========================================================
@@ -56,6 +63,25 @@ public class NewtonIterator extends Iterator {
         this.f = f;
         this.fp = f.derivative();
         this.setOrder(f.degree());
+        cacheCoefficients();
+    }
+
+    /**
+     * Copies the co-efficients of f and fp into the primitive arrays used by the kernel.
+     */
+    private void cacheCoefficients() {
+        this.fRe = new double[f.coeff.length];
+        this.fIm = new double[f.coeff.length];
+        for (int i = 0; i < f.coeff.length; i++) {
+            this.fRe[i] = f.coeff[i].getReal();
+            this.fIm[i] = f.coeff[i].getImag();
+        }
+        this.fpRe = new double[fp.coeff.length];
+        this.fpIm = new double[fp.coeff.length];
+        for (int i = 0; i < fp.coeff.length; i++) {
+            this.fpRe[i] = fp.coeff[i].getReal();
+            this.fpIm[i] = fp.coeff[i].getImag();
+        }
     }
 
     // ========================================================
@@ -107,31 +133,92 @@ public class NewtonIterator extends Iterator {
      * @param z0  The initial starting point for the algorithm.
      */
     public int[] iterate(Complex z0) {
-        int[] result = new int[2];
-        result[0] = this.order; //Default value
-        Complex z_n = new Complex(z0.getReal(), z0.getImag());
-        Complex z_m = new Complex();
-        for (int n=1; n<=this.maxIterations; n++) {
-            result[1] = n;
-            if (fp.evaluate(z_n).abs2() < TOL*TOL) {
+        return unpackResult(iterate(z0.getReal(), z0.getImag()));
+    }
+
+    /**
+     * Primitive Newton-Raphson kernel: as iterate(Complex), but evaluating f and fp by Horner's
+     * method on plain doubles. The only object created is a Complex for each newly found root.
+     *
+     * @return the root index (or order if no root was found) and iteration count, packed by packResult
+     */
+    @Override
+    long iterate(double zRe, double zIm) {
+        double[] fRe = this.fRe, fIm = this.fIm, fpRe = this.fpRe, fpIm = this.fpIm;
+        double valRe, valIm, derRe, derIm, temp, inverse, numRe, numIm, newRe, newIm, dRe, dIm;
+        int n;
+
+        for (n=1; n<=this.maxIterations; n++) {
+
+            derRe = 0;
+            derIm = 0;
+            for (int i = fpRe.length - 1; i >= 0; i--) {
+                temp = fpRe[i] + (derRe * zRe - derIm * zIm);
+                derIm = fpIm[i] + (derRe * zIm + derIm * zRe);
+                derRe = temp;
+            }
+            if (derRe * derRe + derIm * derIm < TOL*TOL) {
                 //err = -1;
-                break;
+                return packResult(this.order, n);
+            }
+
+            valRe = 0;
+            valIm = 0;
+            for (int i = fRe.length - 1; i >= 0; i--) {
+                temp = fRe[i] + (valRe * zRe - valIm * zIm);
+                valIm = fIm[i] + (valRe * zIm + valIm * zRe);
+                valRe = temp;
+            }
+
+            inverse = 1.0 / (derRe * derRe + derIm * derIm);
+            numRe = valRe * derRe + valIm * derIm;
+            numIm = valIm * derRe - valRe * derIm;
+            newRe = zRe - inverse * numRe;
+            newIm = zIm - inverse * numIm;
+
+            dRe = newRe - zRe;
+            dIm = newIm - zIm;
+            zRe = newRe;
+            zIm = newIm;
+
+            if (dRe * dRe + dIm * dIm < TOL*TOL) {
+                return packResult(rootIndex(zRe, zIm), n);
+            }
+        }
+        return packResult(this.order, this.maxIterations);
+    }
+
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        long result;
+        for (int i = x; i < x + length; i++) {
+            result = iterate(originRe + i * dRe, im);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = 0;
             }
-            z_m.setReal(z_n.getReal());
-            z_m.setImag(z_n.getImag());
-            z_n = z_m.add(f.evaluate(z_m).divide(fp.evaluate(z_m)).minus());
-            if (z_n.add(z_m.minus()).abs2() < TOL*TOL) {
-
-                if (findRoot(z_n) == -1) {
-                    roots.add(z_n);
-                    result[0] = roots.size() - 1;
-                }else {
-                    result[0] = findRoot(z_n);
-                }
-                break;
+        }
+    }
+
+    /**
+     * Returns the index of the root re + i*im in the roots ArrayList (up to tolerance),
+     * adding it to the list if it has not been found before.
+     */
+    private int rootIndex(double re, double im) {
+        Complex root;
+        double dRe, dIm;
+        for (int i = 0; i < roots.size(); i++) {
+            root = roots.get(i);
+            dRe = re - root.getReal();
+            dIm = im - root.getImag();
+            if (dRe * dRe + dIm * dIm < Iterator.TOL) {
+                return i;
             }
         }
-        return result;
+        roots.add(new Complex(re, im));
+        return roots.size() - 1;
     }
 
 }
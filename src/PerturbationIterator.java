@@ -0,0 +1,161 @@
+/*
+ * Iterates the Mandelbrot set by perturbation about a high precision ReferenceOrbit.
+ *
+ * Points are given as offsets dc from the reference point C, and the offset of each orbit from the
+ * reference orbit obeys d_{n+1} = 2 Z_n d_n + d_n^2 + dc, which stays well within double precision
+ * long after C + dc itself could no longer be represented as a double.
+ */
+public class PerturbationIterator extends Iterator {
+
+    /**
+     * Colour number reported for points whose result cannot be trusted against this reference,
+     * either because their orbit came too close to the reference orbit's magnitude (a glitch) or
+     * because they outlived an escaping reference orbit.
+     */
+    static final int GLITCHED = -1;
+
+    /**
+     * A point is glitched at step n if |Z_n + d_n|^2 < GLITCH_TOLERANCE * |Z_n|^2.
+     */
+    static final double GLITCH_TOLERANCE = 1.0e-6;
+
+    private final ReferenceOrbit orbit;
+
+    /**
+     * If false, points are never reported as GLITCHED: the result is a best effort, with points that
+     * outlive the reference finishing the iteration directly in double precision.
+     */
+    private boolean glitchDetectionEnabled = true;
+
+    /**
+     * If not null, every point starts at step series.skipIterations with its offset evaluated
+     * from the series rather than iterated.
+     */
+    private SeriesApproximation series;
+
+    public PerturbationIterator(ReferenceOrbit orbit, int maxIterations) {
+        super(maxIterations);
+        this.orbit = orbit;
+        this.setOrder(2);
+    }
+
+    public ReferenceOrbit getOrbit() {
+        return this.orbit;
+    }
+
+    public void setGlitchDetectionEnabled(boolean enabled) {
+        this.glitchDetectionEnabled = enabled;
+    }
+
+    public SeriesApproximation getSeriesApproximation() {
+        return this.series;
+    }
+
+    public void setSeriesApproximation(SeriesApproximation series) {
+        this.series = series;
+    }
+
+    /**
+     * Given an offset p from the reference point, apply the iterative Mandelbrot process.
+     *
+     * @param p  The offset of the starting point from the reference point.
+     */
+    @Override
+    public int[] iterate(Complex p) {
+        return unpackResult(iterate(p.getReal(), p.getImag()));
+    }
+
+    /**
+     * Primitive perturbation kernel. Iteration counts match those of MandelbrotIterator, i.e. a point
+     * escaping when |z_n|^2 > 4 is reported with n+1 iterations.
+     *
+     * @param dcRe real part of the offset of the point from the reference point
+     * @param dcIm imaginary part of the offset of the point from the reference point
+     * @return the colour number (1 if escaped, 0 if not, GLITCHED) and iteration count, packed by packResult
+     */
+    @Override
+    long iterate(double dcRe, double dcIm) {
+        double[] refRe = this.orbit.re, refIm = this.orbit.im, refMagnitude2 = this.orbit.magnitude2;
+        int refLength = this.orbit.length;
+        int maxIterations = this.maxIterations;
+        double dRe = 0, dIm = 0, zRe, zIm, magnitude2, aRe, aIm;
+        int start = 0;
+
+        SeriesApproximation series = this.series;
+        if (series != null && series.skipIterations > 0) {
+            // d_N = ((C dc + B) dc + A) dc
+            aRe = series.cRe * dcRe - series.cIm * dcIm + series.bRe;
+            aIm = series.cRe * dcIm + series.cIm * dcRe + series.bIm;
+            zRe = aRe * dcRe - aIm * dcIm + series.aRe;
+            zIm = aRe * dcIm + aIm * dcRe + series.aIm;
+            dRe = zRe * dcRe - zIm * dcIm;
+            dIm = zRe * dcIm + zIm * dcRe;
+            start = series.skipIterations;
+        }
+
+        for (int n = start; n < maxIterations; n++) {
+
+            zRe = refRe[n] + dRe;
+            zIm = refIm[n] + dIm;
+            magnitude2 = zRe * zRe + zIm * zIm;
+
+            if (magnitude2 > 4) {
+                return packResult(1, n + 1);
+            }
+            if (this.glitchDetectionEnabled && magnitude2 < GLITCH_TOLERANCE * refMagnitude2[n]) {
+                return packResult(GLITCHED, n + 1);
+            }
+
+            // The reference escaped at step n but this point has not, so it has outlived the reference
+            if (n + 1 == refLength && refLength < maxIterations) {
+                if (this.glitchDetectionEnabled) {
+                    return packResult(GLITCHED, n + 1);
+                }
+                return iterateDirectly(zRe, zIm, dcRe, dcIm, n + 1);
+            }
+
+            // d_{n+1} = (2 Z_n + d_n) d_n + dc
+            aRe = 2 * refRe[n] + dRe;
+            aIm = 2 * refIm[n] + dIm;
+            zRe = aRe * dRe - aIm * dIm + dcRe;
+            dIm = aRe * dIm + aIm * dRe + dcIm;
+            dRe = zRe;
+        }
+        return packResult(0, Math.max(maxIterations, 1));
+    }
+
+    /**
+     * Continues the iteration of z_{n-1} = zRe + i*zIm in plain double precision, for points that
+     * outlive the reference orbit when glitch detection is disabled.
+     */
+    private long iterateDirectly(double zRe, double zIm, double dcRe, double dcIm, int n) {
+        double cRe = this.orbit.cRe.doubleValue() + dcRe;
+        double cIm = this.orbit.cIm.doubleValue() + dcIm;
+        double temp;
+
+        // z currently holds z_{n-1}, which did not escape
+        for (; n < this.maxIterations; n++) {
+            temp = zRe * zRe - zIm * zIm + cRe;
+            zIm = 2 * zRe * zIm + cIm;
+            zRe = temp;
+            if (zRe * zRe + zIm * zIm > 4) {
+                return packResult(1, n + 1);
+            }
+        }
+        return packResult(0, Math.max(this.maxIterations, 1));
+    }
+
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        long result;
+        for (int i = x; i < x + length; i++) {
+            result = iterate(originRe + i * dRe, im);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = 0;
+            }
+        }
+    }
+}
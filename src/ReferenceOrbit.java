@@ -0,0 +1,81 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/*
+ * A high precision Mandelbrot orbit Z_0 = 0, Z_{n+1} = Z_n^2 + C, used as the reference for
+ * perturbation rendering of deep zooms.
+ *
+ * The orbit is computed with BigDecimal arithmetic at a precision chosen from the pixel size, then
+ * stored as doubles: each Z_n only needs to be accurate relative to its own magnitude, since
+ * pixels are iterated as small double precision offsets from it.
+ */
+class ReferenceOrbit {
+
+    /**
+     * The real and imaginary parts of the reference point C.
+     */
+    final BigDecimal cRe, cIm;
+
+    /**
+     * The real and imaginary parts of Z_n, rounded to double.
+     */
+    final double[] re, im;
+
+    /**
+     * |Z_n|^2 for each stored Z_n, used by glitch detection.
+     */
+    final double[] magnitude2;
+
+    /**
+     * The number of stored values Z_0 ... Z_{length-1}. If the reference escapes, the last
+     * stored value is the first one with |Z_n|^2 > 4.
+     */
+    final int length;
+
+    /**
+     * Constructor: iterates the reference point for up to maxIterations values of Z_n.
+     *
+     * @param cRe           The real part of the reference point
+     * @param cIm           The imaginary part of the reference point
+     * @param maxIterations The maximum number of values to compute
+     * @param mc            The precision to compute the orbit with
+     */
+    ReferenceOrbit(BigDecimal cRe, BigDecimal cIm, int maxIterations, MathContext mc) {
+        this.cRe = cRe;
+        this.cIm = cIm;
+        this.re = new double[Math.max(maxIterations, 1)];
+        this.im = new double[Math.max(maxIterations, 1)];
+        this.magnitude2 = new double[Math.max(maxIterations, 1)];
+
+        BigDecimal zRe = BigDecimal.ZERO;
+        BigDecimal zIm = BigDecimal.ZERO;
+        BigDecimal zRe2, zIm2;
+        int n = 0;
+
+        while (n < this.re.length) {
+            this.re[n] = zRe.doubleValue();
+            this.im[n] = zIm.doubleValue();
+            this.magnitude2[n] = this.re[n] * this.re[n] + this.im[n] * this.im[n];
+            n++;
+
+            if (this.magnitude2[n - 1] > 4) {
+                break;
+            }
+
+            zRe2 = zRe.multiply(zRe, mc);
+            zIm2 = zIm.multiply(zIm, mc);
+            zIm = zRe.multiply(zIm, mc).multiply(BigDecimal.valueOf(2)).add(cIm, mc);
+            zRe = zRe2.subtract(zIm2, mc).add(cRe, mc);
+        }
+        this.length = n;
+    }
+
+    /**
+     * Returns a MathContext with enough significant digits to resolve offsets of size dz
+     * within the region |z| <= 4, plus a margin for the error growth along the orbit.
+     */
+    static MathContext precisionFor(double dz) {
+        int digits = 20 + (int) Math.ceil(Math.log10(4.0 / dz));
+        return new MathContext(Math.max(digits, 20));
+    }
+}
@@ -0,0 +1,323 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Makes every change to a fractal, and renders it, on one background thread, so that the thread
+ * asking for them (normally the Swing event dispatch thread) never waits for a frame.
+ *
+ * Changes are queued from any thread and applied in the order they were requested. A change to
+ * the view abandons the frame in progress; everything queued by the time the worker is free is
+ * applied together and followed by a single frame, so a burst of zooms costs one frame rather than
+ * one each and the latest view always wins. Each completed frame, and each preview of a
+ * progressive frame, is published as a copy of the fractal's image which is never written again,
+ * so the viewer can swap it in whole without showing a half-drawn image.
+ */
+final class RenderCoordinator {
+
+    private enum Kind {RENDER, TRANSLATE, ZOOM, RECOLOUR}
+
+    private static final class Change {
+
+        private final Kind kind;
+
+        private final Consumer<Fractal> action;
+
+        /**
+         * The zoom factor of a ZOOM change.
+         */
+        private final double factor;
+
+        /**
+         * The number of pixels a TRANSLATE change moves the image right and down.
+         */
+        private final int dX, dY;
+
+        private Change(Kind kind, Consumer<Fractal> action, double factor, int dX, int dY) {
+            this.kind = kind;
+            this.action = action;
+            this.factor = factor;
+            this.dX = dX;
+            this.dY = dY;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Changes requested but not yet applied, oldest first. Guarded by lock.
+     */
+    private final List<Change> pending = new ArrayList<>();
+
+    /**
+     * A fractal to switch to before applying any further changes, or null. Guarded by lock.
+     */
+    private Fractal nextFractal;
+
+    private Consumer<Fractal> nextRenderAction;
+
+    /**
+     * The batch of changes and frame being worked on, or null while the worker is idle.
+     */
+    private volatile RenderHandle currentFrame;
+
+    private final Consumer<BufferedImage> frameListener;
+
+    private final Consumer<Fractal> changeListener;
+
+    // Only used by the worker thread
+    private Fractal fractal;
+    private Consumer<Fractal> renderAction;
+    private boolean frameComplete;
+
+    /**
+     * Constructor. Starts the worker thread, which is a daemon.
+     *
+     * @param frameListener  Called on the worker thread with a copy of each completed frame and preview
+     * @param changeListener Called on the worker thread with the fractal after each batch of changes
+     *                       has been applied, before it is rendered
+     */
+    RenderCoordinator(Consumer<BufferedImage> frameListener, Consumer<Fractal> changeListener) {
+        this.frameListener = frameListener;
+        this.changeListener = changeListener;
+
+        Thread worker = new Thread(this::run, "Fractal render");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // ========================================================
+    // Requests, from any thread.
+    // ========================================================
+
+    /**
+     * Switches to a new fractal, which is then rendered. Changes still queued for the previous
+     * fractal are dropped and its frame in progress is abandoned.
+     *
+     * @param renderAction How to render a frame of the fractal, normally Fractal::createFractal
+     */
+    void setFractal(Fractal fractal, Consumer<Fractal> renderAction) {
+        synchronized (this.lock) {
+            this.nextFractal = fractal;
+            this.nextRenderAction = renderAction;
+            this.pending.clear();
+            cancelFrame();
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Abandons the frame in progress, applies the change and renders a new frame.
+     */
+    void requestRender(Consumer<Fractal> change) {
+        queue(Kind.RENDER, change);
+    }
+
+    /**
+     * Abandons the frame in progress and translates the image by the given number of pixels.
+     * Successive translations are combined. Only the pixels uncovered are rendered, unless the
+     * image being moved was itself unfinished or the view is changed in other ways too, in which
+     * case only the centre is moved and the frame is rendered afresh.
+     */
+    void requestTranslate(int dX, int dY) {
+        synchronized (this.lock) {
+            this.pending.add(new Change(Kind.TRANSLATE, null, 1, dX, dY));
+            cancelFrame();
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Abandons the frame in progress and zooms in by the given factor, or out if it is below 1,
+     * at the given image size. Successive zooms are combined, and the new frame is rendered
+     * from the previous one by Fractal.zoomFractal if that was complete. Only for fractals
+     * rendered by Fractal::createFractal.
+     */
+    void requestZoom(double factor, int width, int height) {
+        queue(Kind.ZOOM, fractal -> fractal.setImageDimensions(width, height), factor);
+    }
+
+    /**
+     * Applies a change that only affects the colouring, then recolours the image with
+     * Fractal.recolor, which iterates nothing. The frame in progress, if any, is completed first
+     * rather than abandoned; if the frame shown is unfinished, it is rendered in full instead.
+     */
+    void requestRecolour(Consumer<Fractal> change) {
+        queue(Kind.RECOLOUR, change);
+    }
+
+    /**
+     * Drops any queued changes and abandons the frame in progress, without waiting for it to stop.
+     */
+    void cancel() {
+        synchronized (this.lock) {
+            this.pending.clear();
+            cancelFrame();
+        }
+    }
+
+    private void queue(Kind kind, Consumer<Fractal> action) {
+        queue(kind, action, 1);
+    }
+
+    private void queue(Kind kind, Consumer<Fractal> action, double factor) {
+        synchronized (this.lock) {
+            this.pending.add(new Change(kind, action, factor, 0, 0));
+            if (kind != Kind.RECOLOUR) {
+                cancelFrame();
+            }
+            this.lock.notifyAll();
+        }
+    }
+
+    private void cancelFrame() {
+        RenderHandle frame = this.currentFrame;
+        if (frame != null) {
+            frame.cancel();
+        }
+    }
+
+    // ========================================================
+    // Worker thread.
+    // ========================================================
+
+    private void run() {
+        List<Change> changes = new ArrayList<>();
+        while (true) {
+            RenderHandle frame;
+            synchronized (this.lock) {
+                while (this.pending.isEmpty() && this.nextFractal == null) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.nextFractal != null) {
+                    switchFractal();
+                }
+                changes.addAll(this.pending);
+                this.pending.clear();
+                frame = new RenderHandle();
+                this.currentFrame = frame;
+            }
+
+            try {
+                applyAndRender(changes, frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                changes.clear();
+                synchronized (this.lock) {
+                    this.currentFrame = null;
+                }
+            }
+        }
+    }
+
+    private void switchFractal() {
+        this.fractal = this.nextFractal;
+        this.renderAction = this.nextRenderAction;
+        this.nextFractal = null;
+        this.nextRenderAction = null;
+        this.frameComplete = false;
+
+        Fractal target = this.fractal;
+        target.setProgressListener(image -> {
+            RenderHandle frame = this.currentFrame;
+            if (frame != null && !frame.isCancelled()) {
+                publish(image);
+            }
+        });
+    }
+
+    private void applyAndRender(List<Change> changes, RenderHandle frame) {
+        Fractal fractal = this.fractal;
+        if (fractal == null) {
+            return;
+        }
+        boolean render = !this.frameComplete;
+        boolean recolour = false;
+        double zoom = 1;
+        int panX = 0, panY = 0;
+
+        for (Change change : changes) {
+            if ((change.kind == Kind.RENDER || change.kind == Kind.ZOOM) && (panX != 0 || panY != 0)) {
+                // The view changes again after the pan, so the frame cannot simply be moved
+                fractal.moveCentre(panX, panY);
+                panX = 0;
+                panY = 0;
+                render = true;
+            }
+            if (change.kind != Kind.ZOOM && zoom != 1) {
+                // Anything else changed after a zoom rules out reusing the old frame
+                fractal.setZoomLevel(fractal.getZoomLevel() * zoom);
+                zoom = 1;
+                render = true;
+            }
+            switch (change.kind) {
+                case RENDER:
+                    change.action.accept(fractal);
+                    render = true;
+                    break;
+                case ZOOM:
+                    change.action.accept(fractal);
+                    zoom *= change.factor;
+                    break;
+                case TRANSLATE:
+                    panX += change.dX;
+                    panY += change.dY;
+                    break;
+                case RECOLOUR:
+                    change.action.accept(fractal);
+                    recolour = true;
+                    break;
+            }
+        }
+
+        if (panX != 0 || panY != 0) {
+            if (render) {
+                // The frame is rendered afresh anyway, possibly at a new size
+                fractal.moveCentre(panX, panY);
+            } else {
+                // Moves the centre even if the frame is cancelled before the strips are rendered
+                int dX = panX, dY = panY;
+                fractal.runFrame(frame, () -> fractal.translateFractal(dX, dY));
+            }
+        }
+
+        boolean zoomFromFrame = zoom != 1 && !render && !frame.isCancelled();
+        if (zoomFromFrame) {
+            // zoomFractal moves the view itself, as the first part of the frame
+            double factor = zoom;
+            fractal.runFrame(frame, () -> fractal.zoomFractal(factor));
+            this.changeListener.accept(fractal);
+        } else {
+            if (zoom != 1) {
+                fractal.setZoomLevel(fractal.getZoomLevel() * zoom);
+                render = true;
+            }
+            this.changeListener.accept(fractal);
+        }
+
+        if (render && !frame.isCancelled()) {
+            fractal.runFrame(frame, () -> this.renderAction.accept(fractal));
+        } else if (recolour && !frame.isCancelled()) {
+            fractal.recolor();
+        }
+
+        this.frameComplete = !frame.isCancelled();
+        if (this.frameComplete) {
+            publish(fractal.getFractalImage());
+        }
+    }
+
+    private void publish(BufferedImage image) {
+        this.frameListener.accept(copyOf(image));
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * A frame being rendered in the background by a RenderCoordinator.
+ *
+ * Cancelling a frame only raises a flag. The rendering threads check it before each row and tile,
+ * so an abandoned frame stops within about a row of work instead of running to completion, and
+ * its image is left unfinished. Only the coordinator's worker thread changes the fractal, so
+ * nothing needs to wait for a cancelled frame to stop.
+ */
+public final class RenderHandle {
+
+    private volatile boolean cancelled;
+
+    RenderHandle() {}
+
+    /**
+     * Asks the frame to stop as soon as possible. Returns without waiting for it to do so.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
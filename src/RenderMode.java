@@ -0,0 +1,14 @@
+enum RenderMode {
+    STANDARD("Standard"), PROGRESSIVE("Progressive"), SUBDIVISION("Subdivision"), BOUNDARY_TRACING("Boundary tracing");
+
+    private final String label;
+
+    RenderMode(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Series approximation of the perturbation offsets d_n of a ReferenceOrbit.
+ *
+ * Writing d_n = A_n dc + B_n dc^2 + C_n dc^3 + ..., the perturbation recurrence
+ * d_{n+1} = 2 Z_n d_n + d_n^2 + dc gives
+ *
+ *     A_{n+1} = 2 Z_n A_n + 1
+ *     B_{n+1} = 2 Z_n B_n + A_n^2
+ *     C_{n+1} = 2 Z_n C_n + 2 A_n B_n
+ *
+ * with A_0 = B_0 = C_0 = 0. While the truncated cubic is accurate for every pixel of the frame,
+ * each pixel can start perturbation iteration at step N with d_N given by the series, skipping the
+ * first N iterations, which are nearly identical across a deep zoom frame.
+ */
+class SeriesApproximation {
+
+    /**
+     * The largest error allowed in d_N, measured as a fraction of a pixel: an error e in d_N moves
+     * the pixel by about e / |A_N| in the complex plane, which must stay below PIXEL_TOLERANCE * dz.
+     */
+    static final double PIXEL_TOLERANCE = 1.0e-3;
+
+    /**
+     * The number of iterations every pixel may skip.
+     */
+    final int skipIterations;
+
+    /**
+     * The series coefficients at step skipIterations.
+     */
+    final double aRe, aIm, bRe, bIm, cRe, cIm;
+
+    /**
+     * Constructor: computes the series coefficients along the reference orbit and chooses the
+     * number of iterations that can be skipped for every offset dc within the given radius.
+     * The choice is first made from the size of the cubic term, then checked against exact
+     * perturbation iteration of probe offsets on the boundary of the frame, halving the skip
+     * until every probe agrees.
+     *
+     * @param orbit  The reference orbit
+     * @param probes The real and imaginary parts of probe offsets, alternating, e.g. the frame corners
+     * @param dz     The distance between adjacent pixels
+     * @param maxIterations The maximum number of iterations per pixel
+     */
+    SeriesApproximation(ReferenceOrbit orbit, double[] probes, double dz, int maxIterations) {
+
+        double radius = 0;
+        for (int k = 0; k < probes.length; k += 2) {
+            radius = Math.max(radius, Math.hypot(probes[k], probes[k + 1]));
+        }
+
+        // The last step we may skip to must leave at least one step of the reference for iteration
+        int limit = Math.min(orbit.length - 1, maxIterations - 1);
+        limit = Math.max(limit, 0);
+
+        double[] aReN = new double[limit + 1], aImN = new double[limit + 1];
+        double[] bReN = new double[limit + 1], bImN = new double[limit + 1];
+        double[] cReN = new double[limit + 1], cImN = new double[limit + 1];
+        double zRe, zIm, cubicTerm;
+        int candidate = 0;
+
+        for (int n = 0; n < limit; n++) {
+            zRe = 2 * orbit.re[n];
+            zIm = 2 * orbit.im[n];
+
+            aReN[n + 1] = zRe * aReN[n] - zIm * aImN[n] + 1;
+            aImN[n + 1] = zRe * aImN[n] + zIm * aReN[n];
+            bReN[n + 1] = zRe * bReN[n] - zIm * bImN[n] + (aReN[n] * aReN[n] - aImN[n] * aImN[n]);
+            bImN[n + 1] = zRe * bImN[n] + zIm * bReN[n] + 2 * aReN[n] * aImN[n];
+            cReN[n + 1] = zRe * cReN[n] - zIm * cImN[n] + 2 * (aReN[n] * bReN[n] - aImN[n] * bImN[n]);
+            cImN[n + 1] = zRe * cImN[n] + zIm * cReN[n] + 2 * (aReN[n] * bImN[n] + aImN[n] * bReN[n]);
+
+            // The neglected terms are estimated by the cubic term itself
+            cubicTerm = Math.hypot(cReN[n + 1], cImN[n + 1]) * radius * radius * radius;
+            if (!(cubicTerm <= PIXEL_TOLERANCE * dz * Math.hypot(aReN[n + 1], aImN[n + 1]))) {
+                break;
+            }
+            candidate = n + 1;
+        }
+
+        while (candidate > 0 && !agreesWithProbes(orbit, probes, dz, candidate,
+                aReN[candidate], aImN[candidate], bReN[candidate], bImN[candidate], cReN[candidate], cImN[candidate])) {
+            candidate /= 2;
+        }
+
+        this.skipIterations = candidate;
+        this.aRe = aReN[candidate];
+        this.aIm = aImN[candidate];
+        this.bRe = bReN[candidate];
+        this.bIm = bImN[candidate];
+        this.cRe = cReN[candidate];
+        this.cIm = cImN[candidate];
+    }
+
+    /**
+     * Checks that the series at step n reproduces exact perturbation iteration of each probe
+     * offset to within PIXEL_TOLERANCE of a pixel, and that no probe escapes or glitches first.
+     */
+    private static boolean agreesWithProbes(ReferenceOrbit orbit, double[] probes, double dz, int n,
+                                            double aRe, double aIm, double bRe, double bIm, double cRe, double cIm) {
+
+        double dcRe, dcIm, dRe, dIm, zRe, zIm, magnitude2, tRe, tIm, sRe, sIm, errorRe, errorIm;
+
+        for (int k = 0; k < probes.length; k += 2) {
+            dcRe = probes[k];
+            dcIm = probes[k + 1];
+
+            dRe = 0;
+            dIm = 0;
+            for (int m = 0; m < n; m++) {
+                zRe = orbit.re[m] + dRe;
+                zIm = orbit.im[m] + dIm;
+                magnitude2 = zRe * zRe + zIm * zIm;
+                if (magnitude2 > 4 || magnitude2 < PerturbationIterator.GLITCH_TOLERANCE * orbit.magnitude2[m]) {
+                    return false;
+                }
+                tRe = 2 * orbit.re[m] + dRe;
+                tIm = 2 * orbit.im[m] + dIm;
+                zRe = tRe * dRe - tIm * dIm + dcRe;
+                dIm = tRe * dIm + tIm * dRe + dcIm;
+                dRe = zRe;
+            }
+
+            // Horner's method: ((C dc + B) dc + A) dc
+            sRe = cRe * dcRe - cIm * dcIm + bRe;
+            sIm = cRe * dcIm + cIm * dcRe + bIm;
+            tRe = sRe * dcRe - sIm * dcIm + aRe;
+            tIm = sRe * dcIm + sIm * dcRe + aIm;
+            errorRe = tRe * dcRe - tIm * dcIm - dRe;
+            errorIm = tRe * dcIm + tIm * dcRe - dIm;
+
+            if (!(Math.hypot(errorRe, errorIm) <= PIXEL_TOLERANCE * dz * Math.hypot(aRe, aIm))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the probe offsets used to validate a series for a rectangle of pixels: its corners
+     * and the midpoints of its edges, relative to the reference pixel (refX, refY).
+     */
+    static double[] rectangleProbes(double refX, double refY, int x, int y, int width, int height, double dz) {
+        double[] probes = new double[16];
+        double[] xs = {x, x + 0.5 * (width - 1), x + width - 1};
+        double[] ys = {y, y + 0.5 * (height - 1), y + height - 1};
+        int k = 0;
+        for (double px : xs) {
+            for (double py : ys) {
+                if (px == xs[1] && py == ys[1]) {
+                    continue;
+                }
+                probes[k++] = (px - refX) * dz;
+                probes[k++] = -(py - refY) * dz;
+            }
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Histograms of the passes through the pixels of an image, one per channel, shared between the
+ * threads rendering it.
+ *
+ * Rather than each thread keeping whole histograms of its own, to be added together at the end,
+ * which takes memory in proportion to the number of threads, every thread adds to the same
+ * histograms through a Writer of its own. The pixels are split into stripes of consecutive
+ * pixels, each guarded by its own lock. A Writer buffers a few passes for each stripe and adds
+ * them all, holding that stripe's lock, once the buffer is full. The memory each thread needs is
+ * then bounded whatever the size of the image, and threads seldom wait for each other since they
+ * rarely flush the same stripe at once.
+ *
+ * Passes that could not be counted exactly, because an INT count saturated or a FLOAT count
+ * was beyond exact integers, are tallied so that a render can report them.
+ */
+final class StripedHistogram {
+
+    /**
+     * The most stripes the pixels are split into.
+     */
+    private static final int MAX_STRIPES = 256;
+
+    /**
+     * The number of passes a Writer buffers for each stripe.
+     */
+    private static final int STRIPE_BUFFER = 64;
+
+    /**
+     * The largest count a float holds exactly, along with every smaller one.
+     */
+    private static final float FLOAT_EXACT_LIMIT = 1 << 24;
+
+    private final HistogramPrecision precision;
+
+    // Only the array for the precision is used
+    private final int[][] intCounts;
+    private final long[][] longCounts;
+    private final float[][] floatCounts;
+
+    private final int numChannels, numPixels, stripeLength;
+
+    private final Object[] locks;
+
+    /**
+     * The passes not counted exactly in each stripe. Guarded by the stripe's lock.
+     */
+    private final long[] inexactPasses;
+
+    /**
+     * Constructor for new, empty histograms.
+     *
+     * @param precision   How the counts are stored
+     * @param numChannels The number of histograms
+     * @param numPixels   The number of pixels in each histogram
+     */
+    StripedHistogram(HistogramPrecision precision, int numChannels, int numPixels) {
+        this(precision,
+                precision == HistogramPrecision.INT ? new int[numChannels][numPixels] : null,
+                precision == HistogramPrecision.LONG ? new long[numChannels][numPixels] : null,
+                precision == HistogramPrecision.FLOAT ? new float[numChannels][numPixels] : null,
+                numChannels, numPixels);
+    }
+
+    private StripedHistogram(HistogramPrecision precision, int[][] intCounts, long[][] longCounts,
+                             float[][] floatCounts, int numChannels, int numPixels) {
+        this.precision = precision;
+        this.intCounts = intCounts;
+        this.longCounts = longCounts;
+        this.floatCounts = floatCounts;
+        this.numChannels = numChannels;
+        this.numPixels = numPixels;
+        int numStripes = Math.max(1, Math.min(MAX_STRIPES, numPixels));
+        this.stripeLength = Math.max(1, (numPixels + numStripes - 1) / numStripes);
+        this.locks = new Object[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            this.locks[i] = new Object();
+        }
+        this.inexactPasses = new long[numStripes];
+    }
+
+    HistogramPrecision getPrecision() {
+        return this.precision;
+    }
+
+    int getNumPixels() {
+        return this.numPixels;
+    }
+
+    /**
+     * Returns the number of passes through a pixel in a channel. Only to be called once all
+     * Writers have been flushed.
+     */
+    double get(int channel, int pixel) {
+        switch (this.precision) {
+            case LONG:
+                return this.longCounts[channel][pixel];
+            case FLOAT:
+                return this.floatCounts[channel][pixel];
+            default:
+                return this.intCounts[channel][pixel];
+        }
+    }
+
+    /**
+     * Returns the number of passes that could not be counted exactly.
+     */
+    long getInexactPasses() {
+        long total = 0;
+        for (int stripe = 0; stripe < this.locks.length; stripe++) {
+            synchronized (this.locks[stripe]) {
+                total += this.inexactPasses[stripe];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of bytes taken by the counts.
+     */
+    long getMemory() {
+        return (this.precision == HistogramPrecision.LONG ? 8L : 4L) * this.numChannels * this.numPixels;
+    }
+
+    /**
+     * Adds the counts of other histograms, of the same precision and size, to these, counting
+     * them as if their passes had been added here. Only to be called once all Writers of both
+     * have been flushed.
+     */
+    void addAll(StripedHistogram other) {
+        if (other.precision != this.precision || other.numChannels != this.numChannels || other.numPixels != this.numPixels) {
+            throw new IllegalArgumentException("Histograms differ in precision or size");
+        }
+        for (int stripe = 0; stripe < this.locks.length; stripe++) {
+            synchronized (this.locks[stripe]) {
+                for (int channel = 0; channel < this.numChannels; channel++) {
+                    for (int pixel = stripe * this.stripeLength; pixel < Math.min((stripe + 1) * this.stripeLength, this.numPixels); pixel++) {
+                        switch (this.precision) {
+                            case LONG:
+                                addCount(stripe, channel, pixel, other.longCounts[channel][pixel]);
+                                break;
+                            case FLOAT:
+                                addCount(stripe, channel, pixel, (long) other.floatCounts[channel][pixel]);
+                                break;
+                            default:
+                                addCount(stripe, channel, pixel, other.intCounts[channel][pixel]);
+                                break;
+                        }
+                    }
+                }
+                this.inexactPasses[stripe] += other.inexactPasses[stripe];
+            }
+        }
+    }
+
+    /**
+     * Sets every count, and the tally of inexact passes, to zero. Only to be called once all
+     * Writers have been flushed.
+     */
+    void clear() {
+        for (int channel = 0; channel < this.numChannels; channel++) {
+            switch (this.precision) {
+                case LONG:
+                    Arrays.fill(this.longCounts[channel], 0);
+                    break;
+                case FLOAT:
+                    Arrays.fill(this.floatCounts[channel], 0);
+                    break;
+                default:
+                    Arrays.fill(this.intCounts[channel], 0);
+                    break;
+            }
+        }
+        for (int stripe = 0; stripe < this.locks.length; stripe++) {
+            synchronized (this.locks[stripe]) {
+                this.inexactPasses[stripe] = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds the given number of passes through a pixel to the count of a channel. The caller
+     * holds the lock of the pixel's stripe.
+     */
+    private void addCount(int stripe, int channel, int pixel, long amount) {
+        long sum, exact;
+        float count;
+        switch (this.precision) {
+            case INT:
+                sum = this.intCounts[channel][pixel] + amount;
+                if (sum > Integer.MAX_VALUE) {
+                    this.inexactPasses[stripe] += sum - Integer.MAX_VALUE;
+                    sum = Integer.MAX_VALUE;
+                }
+                this.intCounts[channel][pixel] = (int) sum;
+                break;
+            case LONG:
+                this.longCounts[channel][pixel] += amount;
+                break;
+            case FLOAT:
+                count = this.floatCounts[channel][pixel];
+                if (count < FLOAT_EXACT_LIMIT) {
+                    // Passes up to the limit are counted exactly, and only the rest rounded
+                    exact = Math.min(amount, (long) (FLOAT_EXACT_LIMIT - count));
+                    count += exact;
+                    amount -= exact;
+                }
+                if (amount > 0) {
+                    count = addRounded(count, amount);
+                    this.inexactPasses[stripe] += amount;
+                }
+                this.floatCounts[channel][pixel] = count;
+                break;
+        }
+    }
+
+    /**
+     * Returns a count of at least FLOAT_EXACT_LIMIT with the given number of passes added. The
+     * passes are added in whole steps between floats, a power of two at a time since the steps
+     * double there, and the part of a step left over is rounded up or down at random, so that the
+     * mean is right.
+     */
+    private static float addRounded(float count, long amount) {
+        double sum = count, ulp, room, steps;
+        while (true) {
+            ulp = Math.ulp((float) sum);
+            room = Math.scalb(1.0, Math.getExponent((float) sum) + 1) - sum;
+            if (amount < room) {
+                break;
+            }
+            sum += room;
+            amount -= (long) room;
+        }
+        steps = Math.floor(amount / ulp);
+        if (ThreadLocalRandom.current().nextDouble() * ulp < amount - steps * ulp) {
+            steps ++;
+        }
+        return (float) (sum + steps * ulp);
+    }
+
+    /**
+     * Returns a new Writer, for use by one thread only.
+     */
+    Writer newWriter() {
+        return new Writer();
+    }
+
+    final class Writer {
+
+        /**
+         * For each stripe, the buffered passes as channel*numPixels + pixel and the amount to add.
+         */
+        private final int[][] indices, amounts;
+
+        private final int[] sizes;
+
+        private Writer() {
+            this.indices = new int[locks.length][STRIPE_BUFFER];
+            this.amounts = new int[locks.length][STRIPE_BUFFER];
+            this.sizes = new int[locks.length];
+        }
+
+        /**
+         * Adds the given number of passes through a pixel to the histogram of a channel. They may
+         * not be seen by other threads until flush is called.
+         */
+        void add(int channel, int pixel, int amount) {
+            int stripe = pixel / stripeLength;
+            int size = this.sizes[stripe];
+            this.indices[stripe][size] = channel*numPixels + pixel;
+            this.amounts[stripe][size] = amount;
+            if (++size == STRIPE_BUFFER) {
+                flushStripe(stripe, size);
+                size = 0;
+            }
+            this.sizes[stripe] = size;
+        }
+
+        /**
+         * Adds all buffered passes to the histograms.
+         */
+        void flush() {
+            for (int stripe = 0; stripe < this.sizes.length; stripe++) {
+                if (this.sizes[stripe] > 0) {
+                    flushStripe(stripe, this.sizes[stripe]);
+                    this.sizes[stripe] = 0;
+                }
+            }
+        }
+
+        private void flushStripe(int stripe, int size) {
+            int[] indices = this.indices[stripe];
+            int[] amounts = this.amounts[stripe];
+            synchronized (locks[stripe]) {
+                for (int k = 0; k < size; k++) {
+                    addCount(stripe, indices[k] / numPixels, indices[k] % numPixels, amounts[k]);
+                }
+            }
+        }
+    }
+}
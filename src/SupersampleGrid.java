@@ -0,0 +1,41 @@
+/**
+ * The sub-pixel samples taken when a pixel is supersampled: the centres of the cells of a
+ * size x size grid over the pixel, or a point chosen at random within each cell.
+ */
+enum SupersampleGrid {
+    GRID_2X2("2x2", 2, false), GRID_3X3("3x3", 3, false), JITTERED_3X3("Jittered 3x3", 3, true);
+
+    private final String label;
+    private final int size;
+    private final boolean jittered;
+
+    SupersampleGrid(String label, int size, boolean jittered) {
+        this.label = label;
+        this.size = size;
+        this.jittered = jittered;
+    }
+
+    int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the offset from the centre of pixel (i, j), as a fraction of the pixel size, of
+     * a sample in cell a along one axis. The jitter depends only on the pixel and the sample
+     * number k, so a frame comes out the same however it is split between threads.
+     */
+    double offset(int a, int i, int j, int k) {
+        if (!this.jittered) {
+            return (a + 0.5) / this.size - 0.5;
+        }
+        long h = i * 0x9E3779B97F4A7C15L ^ j * 0xC2B2AE3D27D4EB4FL ^ k * 0x165667B19E3779F9L;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (a + (h >>> 11) * 0x1.0p-53) / this.size - 0.5;
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
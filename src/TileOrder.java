@@ -0,0 +1,14 @@
+enum TileOrder {
+    ROWS("Rows"), CENTRE_OUT("Centre out");
+
+    private final String label;
+
+    TileOrder(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+}
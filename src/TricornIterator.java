@@ -7,31 +7,132 @@ public class TricornIterator extends Iterator {
 
     @Override
     public int[] iterate(Complex p) {
-        int[] result = new int[2];
-        result[1] = 1;
-        Complex z_n = new Complex(0,0);
-        Complex z_n_temp = new Complex();
-        Complex c = new Complex(p.getReal(), p.getImag());
+        return unpackResult(iterate(p.getReal(), p.getImag()));
+    }
+
+    /**
+     * Primitive Tricorn kernel: iterates z -> conj(z^power) + p using plain doubles, raising to
+     * the power in polar form exactly as Complex.pow does.
+     *
+     * @return the colour number (1 if escaped, 0 otherwise) and iteration count, packed by packResult
+     */
+    @Override
+    long iterate(double x, double y) {
+        return iterate(x, y, threadCycleDetector());
+    }
+
+    private long iterate(double x, double y, CycleDetector cycle) {
+
+        cycle.reset(0, 0);
+
+        if (x * x + y * y <= (double)1/16) {
+            cycle.period = 1;
+            return packResult(0, 1);
+        }
+
+        double power = this.power;
+        double zRe = 0, zIm = 0;
+        double tempRe, tempIm, arg, magnitude, dRe, dIm;
+
+        for (int n = 1; n <= this.maxIterations; n++) {
+
+            if (zRe * zRe + zIm * zIm > 4) {
+                return packResult(1, n);
+            }
+            tempRe = zRe;
+            tempIm = zIm;
+            if (zRe != 0.0 || zIm != 0.0) {
+                arg = Math.atan2(zIm, zRe);
+                magnitude = Math.pow(Math.sqrt(zRe * zRe + zIm * zIm), power);
+                zRe = magnitude * Math.cos(power * arg);
+                zIm = magnitude * Math.sin(power * arg);
+            }
+            zRe = zRe + x;
+            zIm = -zIm + y;
+
+            dRe = tempRe - zRe;
+            dIm = tempIm - zIm;
+            if (dRe * dRe + dIm * dIm <= TOL * TOL) {
+                cycle.period = 1;
+                return packResult(0, n);
+            }
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, Math.max(this.maxIterations, 1));
+            }
+        }
+        return packResult(0, Math.max(this.maxIterations, 1));
+    }
 
-        if (p.abs2() <= (double)1/16) {
+    /**
+     * Only the quadratic Tricorn has a double-double kernel.
+     */
+    @Override
+    boolean supportsDoubleDouble() {
+        return this.power == 2;
+    }
+
+    /**
+     * Double-double Tricorn kernel for power 2, iterating z -> conj(z)^2 + p algebraically, in the
+     * scratch numbers of the calling thread.
+     */
+    @Override
+    long iterate(DoubleDouble x, DoubleDouble y, CycleDetector cycle) {
+        if (!supportsDoubleDouble()) {
+            return iterate(x.doubleValue(), y.doubleValue(), cycle);
         }
-        else for (int n = 1; n <= this.maxIterations; n++) {
-            result[1] = n;
-            this.numIterations = n;
 
-            if (z_n.abs2() > 4) {
-                result[0] = 1;
-                break;
+        cycle.reset(0, 0);
+
+        DoubleDouble[] scratch = threadDoubleDoubles();
+        DoubleDouble zRe = scratch[0].set(x).square(), zIm = scratch[1].set(y).square();
+        if (zRe.hi + zIm.hi <= (double)1/16) {
+            cycle.period = 1;
+            return packResult(0, 1);
+        }
+
+        DoubleDouble temp = scratch[2];
+        double dRe, dIm;
+        zRe.set(0);
+        zIm.set(0);
+
+        for (int n = 1; n <= this.maxIterations; n++) {
+
+            if (zRe.hi * zRe.hi + zIm.hi * zIm.hi > 4) {
+                return packResult(1, n);
+            }
+
+            dRe = zRe.hi;
+            dIm = zIm.hi;
+            temp.set(zIm).square();
+            zIm.multiply(zRe).twice().negate().add(y);
+            zRe.square().subtract(temp).add(x);
+            dRe -= zRe.hi;
+            dIm -= zIm.hi;
+
+            if (dRe * dRe + dIm * dIm <= TOL * TOL) {
+                cycle.period = 1;
+                return packResult(0, n);
             }
-            z_n_temp.setReal(z_n.getReal());
-            z_n_temp.setImag(z_n.getImag());
-            z_n = z_n.pow(this.power).conjugate().add(c);
+            if (cycle.isPeriodic(zRe, zIm)) {
+                return packResult(0, Math.max(this.maxIterations, 1));
+            }
+        }
+        return packResult(0, Math.max(this.maxIterations, 1));
+    }
 
-            if (z_n_temp.add(z_n.minus()).abs2() <= TOL * TOL) {
-                break;
+    @Override
+    void iterateRow(double originRe, double dRe, double im, int x, int length,
+                    int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+        CycleDetector cycle = newCycleDetector();
+        long result;
+        for (int i = x; i < x + length; i++) {
+            result = iterate(originRe + i * dRe, im, cycle);
+            colorNums[rowOffset + i] = resultColorNum(result);
+            iterationCounts[rowOffset + i] = resultIterations(result);
+            if (periods != null) {
+                periods[rowOffset + i] = cycle.period;
             }
         }
-        return result;
     }
 
 }
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Vectorised iteration kernels built on the incubating JDK Vector API.
+ *
+ * Each kernel iterates SPECIES.length() pixels of a row in lockstep, retiring lanes with a mask as
+ * they escape or are classified, and performs the same double operations in the same order as the
+ * corresponding scalar kernel so that both produce identical images.
+ *
+ * This class is only loaded when Iterator.VECTOR_API_AVAILABLE is true, i.e. when the application
+ * is run with --add-modules jdk.incubator.vector. Without that flag the scalar kernels are used.
+ */
+final class VectorKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernel() {}
+
+    /**
+     * Returns the number of pixels iterated together.
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Vectorised equivalent of MandelbrotIterator.iterate(x, y, maxIterations, cycle) along a row,
+     * including the cycle detection: every lane starts its orbit together, so the saved points of
+     * all lanes are refreshed on the same iterations. Only whole vectors are processed; the caller
+     * iterates any remaining columns itself.
+     *
+     * The columns iterated are x, x + step, ..., x + (count - 1)*step, so that a row can be sampled
+     * sparsely; results are written at the columns' own indices.
+     *
+     * The outcome of each lane is held in a state vector (0 while iterating, -1 once escaped, or
+     * the detected period) rather than in loop-carried masks, whose logical operations are not
+     * compiled to vector instructions by every JDK and would otherwise allocate on each iteration.
+     *
+     * @return the number of columns processed, starting from the first
+     */
+    static int mandelbrotRow(double originRe, double dRe, double im, int x, int step, int count, int maxIterations,
+                             double cycleTolerance, int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+
+        int lanes = SPECIES.length();
+        double[] laneRe = new double[lanes];
+        double[] laneCounts = new double[lanes];
+        double[] laneStates = new double[lanes];
+        double[] laneSavedRe = new double[lanes];
+        double[] laneSavedIm = new double[lanes];
+
+        DoubleVector y = DoubleVector.broadcast(SPECIES, im);
+        DoubleVector yy = y.mul(y);
+        double tol2 = Iterator.TOL * Iterator.TOL;
+        double cycleTol2 = cycleTolerance * cycleTolerance;
+        double maxCount = Math.max(maxIterations, 1);
+        int end = count - (count % lanes);
+        int interval, steps, column;
+
+        // Scalars used in the loop are broadcast once, as not every JDK compiles broadcasts well
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        DoubleVector four = DoubleVector.broadcast(SPECIES, 4.0);
+        DoubleVector escaped = DoubleVector.broadcast(SPECIES, -1.0);
+        DoubleVector infinity = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector tolerance2 = DoubleVector.broadcast(SPECIES, tol2);
+        DoubleVector cycleTolerance2 = DoubleVector.broadcast(SPECIES, cycleTol2);
+        DoubleVector maxCounts = DoubleVector.broadcast(SPECIES, maxCount);
+        DoubleVector iteration, stepCount;
+
+        for (int i = 0; i < end; i += lanes) {
+
+            for (int k = 0; k < lanes; k++) {
+                laneRe[k] = originRe + (x + (i + k) * step) * dRe;
+            }
+            DoubleVector cx = DoubleVector.fromArray(SPECIES, laneRe, 0);
+
+            // Main cardioid (period 1) and period 2 bulb check, as in the scalar kernel
+            DoubleVector q = cx.sub(0.25);
+            DoubleVector a = q.mul(q).add(yy);
+            DoubleVector b = a.mul(a.add(q));
+            DoubleVector p = cx.add(1.0);
+            DoubleVector c = p.mul(p).add(yy);
+            DoubleVector state = DoubleVector.zero(SPECIES)
+                    .blend(2.0, c.lt(0.0625))
+                    .blend(1.0, b.lt(yy.mul(0.25)));
+
+            DoubleVector counts = one;
+            DoubleVector zRe = zero;
+            DoubleVector zIm = zero;
+            DoubleVector zRe2 = zRe;
+            DoubleVector zIm2 = zIm;
+            DoubleVector newRe, newIm, diffRe, diffIm;
+            VectorMask<Double> live, escapes, converges, cycles;
+            Arrays.fill(laneSavedRe, 0);
+            Arrays.fill(laneSavedIm, 0);
+            interval = 1;
+            steps = 0;
+            iteration = one;
+            stepCount = zero;
+            live = state.compare(VectorOperators.EQ, zero);
+
+            for (int n = 1; n <= maxIterations && live.anyTrue(); n++) {
+
+                // Finished lanes are given values that fail every test below
+                escapes = zero.blend(zRe2.add(zIm2), live).compare(VectorOperators.GT, four);
+
+                newIm = zRe.add(zRe).mul(zIm).add(y);
+                newRe = zRe2.sub(zIm2).add(cx);
+                diffRe = zRe.sub(newRe);
+                diffIm = zIm.sub(newIm);
+                zRe = newRe;
+                zIm = newIm;
+                zRe2 = zRe.mul(zRe);
+                zIm2 = zIm.mul(zIm);
+
+                converges = infinity.blend(diffRe.mul(diffRe).add(diffIm.mul(diffIm)), live)
+                        .compare(VectorOperators.LE, tolerance2);
+
+                // Brent cycle detection against the saved points
+                steps++;
+                stepCount = stepCount.add(one);
+                diffRe = zRe.sub(DoubleVector.fromArray(SPECIES, laneSavedRe, 0));
+                diffIm = zIm.sub(DoubleVector.fromArray(SPECIES, laneSavedIm, 0));
+                cycles = infinity.blend(diffRe.mul(diffRe).add(diffIm.mul(diffIm)), live)
+                        .compare(VectorOperators.LE, cycleTolerance2);
+
+                // Applied in reverse order of the scalar kernel's tests, so the first test passed wins
+                counts = counts.blend(maxCounts, cycles).blend(iteration, converges).blend(iteration, escapes);
+                state = state.blend(stepCount, cycles).blend(one, converges).blend(escaped, escapes);
+                iteration = iteration.add(one);
+                live = state.compare(VectorOperators.EQ, zero);
+
+                if (steps == interval) {
+                    zRe.intoArray(laneSavedRe, 0);
+                    zIm.intoArray(laneSavedIm, 0);
+                    steps = 0;
+                    stepCount = zero;
+                    interval <<= 1;
+                }
+            }
+            counts = counts.blend(maxCounts, live);
+
+            counts.intoArray(laneCounts, 0);
+            state.intoArray(laneStates, 0);
+            for (int k = 0; k < lanes; k++) {
+                column = rowOffset + x + (i + k) * step;
+                iterationCounts[column] = (int) laneCounts[k];
+                colorNums[column] = laneStates[k] < 0 ? 1 : 0;
+                if (periods != null) {
+                    periods[column] = Math.max((int) laneStates[k], 0);
+                }
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Vectorised equivalent of the integer power 2 case of JuliaIterator's kernel along a row,
+     * including the cycle detection. Lane outcomes are held in a state vector, and columns are
+     * chosen, as in mandelbrotRow. Only whole vectors are processed; the caller iterates any
+     * remaining columns itself.
+     *
+     * @return the number of columns processed, starting from the first
+     */
+    static int juliaRow(double originRe, double dRe, double im, int x, int step, int count, int maxIterations,
+                        double cycleTolerance, double cRe, double cIm,
+                        int[] colorNums, int[] iterationCounts, int[] periods, int rowOffset) {
+
+        int lanes = SPECIES.length();
+        double[] laneRe = new double[lanes];
+        double[] laneCounts = new double[lanes];
+        double[] laneStates = new double[lanes];
+        double[] laneSavedRe = new double[lanes];
+        double[] laneSavedIm = new double[lanes];
+        double cycleTol2 = cycleTolerance * cycleTolerance;
+        int end = count - (count % lanes);
+        int interval, steps, column;
+
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        DoubleVector four = DoubleVector.broadcast(SPECIES, 4.0);
+        DoubleVector escaped = DoubleVector.broadcast(SPECIES, -1.0);
+        DoubleVector infinity = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        DoubleVector cycleTolerance2 = DoubleVector.broadcast(SPECIES, cycleTol2);
+        DoubleVector maxCounts = DoubleVector.broadcast(SPECIES, maxIterations);
+        DoubleVector stepCount;
+
+        for (int i = 0; i < end; i += lanes) {
+
+            for (int k = 0; k < lanes; k++) {
+                laneRe[k] = originRe + (x + (i + k) * step) * dRe;
+            }
+            DoubleVector zRe = DoubleVector.fromArray(SPECIES, laneRe, 0);
+            DoubleVector zIm = DoubleVector.broadcast(SPECIES, im);
+            DoubleVector counts = one;
+            DoubleVector state = zero
+                    .blend(escaped, counts.compare(VectorOperators.GE, maxCounts))
+                    .blend(escaped, zRe.mul(zRe).add(zIm.mul(zIm)).compare(VectorOperators.GE, four));
+            DoubleVector newRe, newIm, diffRe, diffIm;
+            VectorMask<Double> live, cycles, exhausted, escapes;
+            zRe.intoArray(laneSavedRe, 0);
+            zIm.intoArray(laneSavedIm, 0);
+            interval = 1;
+            steps = 0;
+            stepCount = zero;
+            live = state.compare(VectorOperators.EQ, zero);
+
+            while (live.anyTrue()) {
+
+                newRe = zRe.mul(zRe).sub(zIm.mul(zIm)).add(cRe);
+                newIm = zRe.add(zRe).mul(zIm).add(cIm);
+                zRe = zRe.blend(newRe, live);
+                zIm = zIm.blend(newIm, live);
+                counts = counts.blend(counts.add(one), live);
+
+                // Brent cycle detection against the saved points
+                steps++;
+                stepCount = stepCount.add(one);
+                diffRe = zRe.sub(DoubleVector.fromArray(SPECIES, laneSavedRe, 0));
+                diffIm = zIm.sub(DoubleVector.fromArray(SPECIES, laneSavedIm, 0));
+                cycles = infinity.blend(diffRe.mul(diffRe).add(diffIm.mul(diffIm)), live)
+                        .compare(VectorOperators.LE, cycleTolerance2);
+                exhausted = zero.blend(counts, live).compare(VectorOperators.GE, maxCounts);
+                escapes = zero.blend(zRe.mul(zRe).add(zIm.mul(zIm)), live).compare(VectorOperators.GE, four);
+
+                // A detected cycle takes precedence, as the scalar kernel checks it first
+                counts = counts.blend(maxCounts, cycles);
+                state = state.blend(escaped, exhausted).blend(escaped, escapes).blend(stepCount, cycles);
+                live = state.compare(VectorOperators.EQ, zero);
+
+                if (steps == interval) {
+                    zRe.intoArray(laneSavedRe, 0);
+                    zIm.intoArray(laneSavedIm, 0);
+                    steps = 0;
+                    stepCount = zero;
+                    interval <<= 1;
+                }
+            }
+
+            counts.intoArray(laneCounts, 0);
+            state.intoArray(laneStates, 0);
+            for (int k = 0; k < lanes; k++) {
+                column = rowOffset + x + (i + k) * step;
+                iterationCounts[column] = (int) laneCounts[k];
+                colorNums[column] = laneCounts[k] == maxIterations ? 0 : 1;
+                if (periods != null) {
+                    periods[column] = Math.max((int) laneStates[k], 0);
+                }
+            }
+        }
+
+        return end;
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+
+/*
+ * The results of the previous frame, kept while a zoomed frame is rendered from it.
+ *
+ * The zoom is about an anchor pixel whose point stays where it is, so column i of the new frame
+ * lies at column anchorX + (i - anchorX)/ratio of the old one, where ratio is the old pixel size
+ * over the new. Every new pixel takes the colour of the nearest old pixel as a preview. Where
+ * that column is a whole number (every ratio-th column for an integer ratio) and the same holds
+ * for the row, the new pixel is at the very point of the old one, and its result is reused
+ * instead of being iterated again.
+ *
+ * Escaped pixels are only reused if supersampling is disabled, since their supersampled
+ * counts depend on the pixel size. Seeds are only read once created, so they may be shared
+ * between rendering threads.
+ */
+final class ZoomSeed {
+
+    /**
+     * How close to a whole old column or row a new one must be to count as the same point.
+     */
+    private static final double COINCIDENCE_TOLERANCE = 1.0e-6;
+
+    /**
+     * The largest spacing of reused columns worth iterating around. The other columns are
+     * iterated as that many strided runs, which must stay long enough for the vectorised kernels.
+     */
+    private static final int MAX_COLUMN_PERIOD = 16;
+
+    private final int[] colorNums, iterationCounts, periods;
+
+    private final int width;
+
+    private final boolean reuseEscaped;
+
+    /**
+     * For each new column (row), the nearest old one, or -1 if it lies outside the old frame.
+     */
+    private final int[] nearestColumns, nearestRows;
+
+    /**
+     * For each new column (row), the old one at exactly the same place, or -1 if there is none.
+     */
+    private final int[] sourceColumns, sourceRows;
+
+    /**
+     * The spacing of the columns in sourceColumns that lie on old ones.
+     */
+    private int columnPeriod = 1;
+
+    /**
+     * Constructor. The arrays of the previous frame are kept, not copied.
+     *
+     * @param width        The width of both frames
+     * @param height       The height of both frames
+     * @param ratio        The old pixel size divided by the new, i.e. the zoom factor
+     * @param reuseEscaped Whether pixels that escaped may be reused, or only those in the set
+     */
+    ZoomSeed(int[] colorNums, int[] iterationCounts, int[] periods, int width, int height,
+             double ratio, int anchorX, int anchorY, boolean reuseEscaped) {
+        this.colorNums = colorNums;
+        this.iterationCounts = iterationCounts;
+        this.periods = periods;
+        this.width = width;
+        this.reuseEscaped = reuseEscaped;
+        this.nearestColumns = new int[width];
+        this.sourceColumns = new int[width];
+        this.nearestRows = new int[height];
+        this.sourceRows = new int[height];
+        mapLines(ratio, anchorX, width, this.nearestColumns, this.sourceColumns);
+        mapLines(ratio, anchorY, height, this.nearestRows, this.sourceRows);
+
+        // Reused columns must be evenly spaced, and not too far apart, to be skipped efficiently
+        int first = -1, period = 0;
+        boolean even = true;
+        for (int i = 0; i < width; i++) {
+            if (this.sourceColumns[i] < 0) {
+                even &= first < 0 || period == 0 || (i - first) % period != 0;
+            } else if (first < 0) {
+                first = i;
+            } else if (period == 0) {
+                period = i - first;
+            } else {
+                even &= (i - first) % period == 0;
+            }
+        }
+        if (even && period > 0 && period <= MAX_COLUMN_PERIOD) {
+            this.columnPeriod = period;
+        } else {
+            Arrays.fill(this.sourceColumns, -1);
+            Arrays.fill(this.sourceRows, -1);
+        }
+
+        // Rows with nothing to reuse are iterated as usual
+        for (int j = 0; j < height; j++) {
+            if (this.sourceRows[j] >= 0 && countRow(j) == 0) {
+                this.sourceRows[j] = -1;
+            }
+        }
+    }
+
+    private static void mapLines(double ratio, int anchor, int length, int[] nearest, int[] source) {
+        for (int i = 0; i < length; i++) {
+            double old = anchor + (i - anchor) / ratio;
+            long k = Math.round(old);
+            boolean inside = k >= 0 && k < length;
+            nearest[i] = inside ? (int) k : -1;
+            source[i] = inside && Math.abs(old - k) < COINCIDENCE_TOLERANCE ? (int) k : -1;
+        }
+    }
+
+    /**
+     * Draws a preview of the new frame from the coloured pixels of the old one, each new pixel
+     * taking the colour of the nearest old pixel. Pixels outside the old frame are left as they
+     * are. Copying colours, rather than results, means the preview needs no colouring.
+     */
+    void preview(int[] oldPixels, int[] pixels) {
+        int height = this.nearestRows.length;
+        int rowOffset;
+        for (int j = 0; j < height; j++) {
+            if (this.nearestRows[j] < 0) {
+                continue;
+            }
+            rowOffset = this.nearestRows[j]*this.width;
+            for (int i = 0; i < this.width; i++) {
+                if (this.nearestColumns[i] >= 0) {
+                    pixels[j*this.width + i] = oldPixels[rowOffset + this.nearestColumns[i]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if some pixels of new row j may be reused.
+     */
+    boolean seedsRow(int j) {
+        return this.sourceRows[j] >= 0;
+    }
+
+    /**
+     * Returns true if pixels of new column i may be reused.
+     */
+    boolean seedsColumn(int i) {
+        return this.sourceColumns[i] >= 0;
+    }
+
+    /**
+     * Returns the spacing of the columns that may be reused. Whether a column may be reused
+     * depends only on its remainder when divided by this.
+     */
+    int getColumnPeriod() {
+        return this.columnPeriod;
+    }
+
+    /**
+     * If pixel (i, j) of the new frame can be reused, copies the old result to the given index
+     * of the new arrays and returns true; otherwise returns false.
+     */
+    boolean apply(int i, int j, int index, int[] colorNums, int[] iterationCounts, int[] periods) {
+        if (this.sourceRows[j] < 0 || this.sourceColumns[i] < 0) {
+            return false;
+        }
+        int oldIndex = this.sourceRows[j]*this.width + this.sourceColumns[i];
+        int colorNum = this.colorNums[oldIndex];
+        if (colorNum < 0 || (colorNum != 0 && !this.reuseEscaped)) {
+            return false;
+        }
+        colorNums[index] = colorNum;
+        iterationCounts[index] = this.iterationCounts[oldIndex];
+        periods[index] = this.periods[oldIndex];
+        return true;
+    }
+
+    /**
+     * Returns the number of pixels of the new frame that can be reused.
+     */
+    int count() {
+        int count = 0;
+        for (int j = 0; j < this.sourceRows.length; j++) {
+            count += countRow(j);
+        }
+        return count;
+    }
+
+    private int countRow(int j) {
+        if (this.sourceRows[j] < 0) {
+            return 0;
+        }
+        int count = 0;
+        int colorNum;
+        for (int column : this.sourceColumns) {
+            if (column < 0) {
+                continue;
+            }
+            colorNum = this.colorNums[this.sourceRows[j]*this.width + column];
+            if (colorNum == 0 || (colorNum > 0 && this.reuseEscaped)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}